@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static gitlet.Utils.*;
+
+/** Builds synthetic repositories for the benchmarks. A repository starts
+ *  with FILES files of about FILESIZE bytes of text lines, spread over
+ *  directories of at most DIR_SIZE files, committed together. BRANCHES
+ *  branches then start from that commit, and the remaining commits are
+ *  made RUN at a time on each branch and on master in turn, each
+ *  rewriting one line of CHANGES files. Every MERGEINTERVAL'th commit on
+ *  master after its first RUN is instead a merge of the next branch in
+ *  turn, if it has commits master lacks. Each branch changes only its
+ *  own share of the files, so the merges never conflict. The same
+ *  arguments always give the same files and messages.
+ *
+ *  Usage: java gitlet.RepoGenerator DIR COMMITS FILES [FILESIZE [BRANCHES
+ *  [MERGEINTERVAL [CHANGES]]]], to build a repository in directory DIR.
+ *  @author Saksham Agarwal
+ */
+class RepoGenerator {
+
+    /** Largest number of files in one directory. */
+    private static final int DIR_SIZE = 500;
+    /** Number of commits made on a branch before moving to the next, so
+     *  that the working files are not rewritten by a checkout for every
+     *  commit. */
+    private static final int RUN = 10;
+    /** Length of a line of a file, with its newline. */
+    private static final int LINE_LENGTH = 40;
+    private static final long SEED = 61;
+
+    private final int commits;
+    private final int files;
+    private final int fileSize;
+    private final int branches;
+    private final int mergeInterval;
+    private final int changes;
+    private final Random random = new Random(SEED);
+
+    /** A generator of repositories of COMMITS commits, FILES files of about
+     *  FILESIZE bytes, BRANCHES branches besides master, a merge every
+     *  MERGEINTERVAL commits on master, or none if it is 0, and CHANGES
+     *  files changed by each other commit. */
+    RepoGenerator(int commits, int files, int fileSize, int branches, int mergeInterval,
+                  int changes) {
+        if (commits < 1 || files <= branches || fileSize < 1 || branches < 0
+                || mergeInterval < 0 || changes < 1) {
+            throw error("Incorrect operands.");
+        }
+        this.commits = commits;
+        this.files = files;
+        this.fileSize = fileSize;
+        this.branches = branches;
+        this.mergeInterval = mergeInterval;
+        this.changes = Math.min(changes, Math.max(1, files / (branches + 1)));
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 3 || args.length > 7) {
+                throw error("Incorrect operands.");
+            }
+            int[] values = {0, 0, 4096, 4, 10, 10};
+            for (int i = 1; i < args.length; i++) {
+                values[i - 1] = Integer.parseInt(args[i]);
+            }
+            File dir = new File(args[0]);
+            dir.mkdirs();
+            new RepoGenerator(values[0], values[1], values[2], values[3], values[4], values[5])
+                    .generate(dir);
+        } catch (NumberFormatException excp) {
+            System.out.println("Incorrect operands.");
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** Build a repository in the existing empty directory DIR, leave
+     *  master checked out, and return it. */
+    Gitlet generate(File dir) {
+        Gitlet gitlet = Gitlet.init(dir);
+        gitlet.batch(g -> {
+            List<String> dirs = new ArrayList<>();
+            for (int i = 0; i < files; i++) {
+                File file = file(dir, i);
+                if (i % DIR_SIZE == 0) {
+                    file.getParentFile().mkdirs();
+                    dirs.add(file.getParentFile().getName());
+                }
+                writeContents(file, text());
+            }
+            g.add(dirs.toArray(new String[0]));
+            g.commit("Import " + files + " files.");
+            for (int b = 1; b <= branches; b++) {
+                g.branch(branchName(b));
+            }
+            int made = 1;
+            int onMaster = 0;
+            int merged = 0;
+            for (int b = 1 % (branches + 1); made < commits; b = (b + 1) % (branches + 1)) {
+                String branch = b == 0 ? "master" : branchName(b);
+                if (!branch.equals(g.currentBranch())) {
+                    g.checkout(branch);
+                }
+                for (int i = 0; i < RUN && made < commits; i++, made++) {
+                    if (b == 0) {
+                        onMaster++;
+                    }
+                    String other = branches == 0 ? null : branchName(merged % branches + 1);
+                    if (b == 0 && onMaster > RUN && other != null && mergeInterval > 0
+                            && onMaster % mergeInterval == 0 && !g.isAncestor(other, "master")) {
+                        g.merge(other);
+                        merged++;
+                    } else {
+                        change(g, dir, b, made);
+                    }
+                }
+            }
+            if (!g.currentBranch().equals("master")) {
+                g.checkout("master");
+            }
+        });
+        return gitlet;
+    }
+
+    /** Rewrite a line of each of CHANGES files of branch BRANCH's share,
+     *  and commit them as the commit numbered NUMBER. */
+    private void change(Gitlet gitlet, File dir, int branch, int number) {
+        String[] paths = new String[changes];
+        int share = (files - branch + branches) / (branches + 1);
+        for (int i = 0; i < changes; i++) {
+            int index = random.nextInt(share) * (branches + 1) + branch;
+            File file = file(dir, index);
+            String contents = readContentsAsString(file);
+            int line = random.nextInt(Math.max(1, contents.length() / LINE_LENGTH));
+            int start = line * LINE_LENGTH;
+            writeContents(file, contents.substring(0, start) + line()
+                    + contents.substring(Math.min(contents.length(), start + LINE_LENGTH)));
+            paths[i] = dir.toPath().relativize(file.toPath()).toString();
+        }
+        gitlet.add(paths);
+        gitlet.commit("Change number " + number + ".");
+    }
+
+    /** Return the working file of file number INDEX under DIR. */
+    private static File file(File dir, int index) {
+        return join(dir, "d" + index / DIR_SIZE, "f" + index + ".txt");
+    }
+
+    static String branchName(int b) {
+        return "branch" + b;
+    }
+
+    /** Return FILESIZE bytes, rounded up to whole lines, of random text. */
+    private String text() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < fileSize) {
+            text.append(line());
+        }
+        return text.toString();
+    }
+
+    /** Return a line of LINE_LENGTH random letters, with its newline. */
+    private String line() {
+        char[] line = new char[LINE_LENGTH];
+        for (int i = 0; i < LINE_LENGTH - 1; i++) {
+            line[i] = (char) ('a' + random.nextInt(26));
+        }
+        line[LINE_LENGTH - 1] = '\n';
+        return new String(line);
+    }
+}
@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import static gitlet.Utils.*;
+
+/** Benchmarks of the Repository operations, run in-process against a
+ *  repository built by RepoGenerator for each trial. Its shape is set by
+ *  the parameters, for instance -p commits=10000 -p files=50000. The
+ *  operations that change the repository are undone, or made harmless,
+ *  before each invocation, outside the time measured: add rewrites a
+ *  file first, commit stages one, checkout alternates between master and
+ *  a branch, and merge resets master to where it was.
+ *  @author Saksham Agarwal
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Param({"1000"})
+    public int commits;
+    @Param({"1000"})
+    public int files;
+    @Param({"4096"})
+    public int fileSize;
+    @Param({"4"})
+    public int branches;
+    @Param({"10"})
+    public int mergeInterval;
+
+    private File dir;
+    /** A file of the repository, rewritten before add and commit. */
+    private File file;
+    private String fileName;
+    /** The tip of master as generated. */
+    private String master;
+    /** A branch that master has not merged all of and is not an ancestor
+     *  of, and its tip. */
+    private String branch;
+    private String branchTip;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("gitlet-bench").toFile().getAbsoluteFile();
+        new RepoGenerator(commits, files, fileSize, branches, mergeInterval, 10).generate(dir);
+        Repository.setDirectory(dir);
+        Refs refs = Refs.load();
+        master = refs.head();
+        for (String name : refs.branches()) {
+            String tip = refs.branch(name);
+            if (!Repository.isAncestor(tip, master) && !Repository.isAncestor(master, tip)) {
+                branch = name;
+                branchTip = tip;
+            }
+        }
+        List<String> names = plainFilenamesIn(join(dir, "d0"));
+        fileName = "d0/" + names.get(0);
+        file = join(dir, fileName);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void add(Rewritten rewritten) {
+        Repository.add(fileName);
+    }
+
+    @Benchmark
+    public String commit(Staged staged) {
+        return Repository.commit("Benchmark commit " + staged.count + ".");
+    }
+
+    @Benchmark
+    public void log(Blackhole bh) {
+        Repository.history(bh::consume);
+    }
+
+    @Benchmark
+    public Gitlet.Status status() {
+        return Repository.currentStatus();
+    }
+
+    @Benchmark
+    public Gitlet.Update checkout() {
+        String current = Refs.load().currentBranch();
+        return Repository.checkoutBranch(current.equals("master") ? mergeable() : "master");
+    }
+
+    @Benchmark
+    public Gitlet.MergeResult merge(Unmerged unmerged) {
+        return Repository.mergeBranch(mergeable());
+    }
+
+    @Benchmark
+    public String splitPoint() {
+        return Repository.splitPoint(master, branchTip);
+    }
+
+    /** Return the branch merged and checked out, failing if the repository
+     *  has none that can be. */
+    private String mergeable() {
+        if (branch == null) {
+            throw new IllegalStateException("No branch to merge; use -p branches=1 or more.");
+        }
+        return branch;
+    }
+
+    /** The repository with the file given a new line before each
+     *  invocation. */
+    @State(Scope.Thread)
+    public static class Rewritten {
+        private int count;
+
+        @Setup(Level.Invocation)
+        public void rewrite(RepositoryBenchmark repo) {
+            count++;
+            writeContents(repo.file, readContentsAsString(repo.file) + count + "\n");
+        }
+    }
+
+    /** The repository with the file given a new line and staged before
+     *  each invocation. */
+    @State(Scope.Thread)
+    public static class Staged {
+        private int count;
+
+        @Setup(Level.Invocation)
+        public void stage(RepositoryBenchmark repo) {
+            count++;
+            writeContents(repo.file, readContentsAsString(repo.file) + count + "\n");
+            Repository.add(repo.fileName);
+        }
+    }
+
+    /** The repository with master reset to its generated tip before each
+     *  invocation, undoing the merge before. */
+    @State(Scope.Thread)
+    public static class Unmerged {
+        @Setup(Level.Invocation)
+        public void reset(RepositoryBenchmark repo) {
+            Repository.resetTo(repo.master);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import static gitlet.Utils.*;
+
+/** An immutable set of non-negative ints, compressed in the manner of
+ *  Roaring bitmaps. The ints are split by their high 16 bits into chunks
+ *  of 65536, and the ints of each chunk held in a container: a sorted
+ *  array of their low 16 bits if there are at most ARRAY_LIMIT of them,
+ *  or else a bitmap of 1024 words. Set operations work a chunk at a time
+ *  on whole words. When written, a container is stored in the smallest
+ *  of those two forms and a third, a list of runs of consecutive ints,
+ *  which suits the long unbroken ranges of commit positions an ancestry
+ *  covers.
+ *  @author Saksham Agarwal
+ */
+class Bitmap {
+
+    /** The empty set. */
+    static final Bitmap EMPTY = new Bitmap(new int[0], new Object[0]);
+
+    /** Largest number of ints a container holds as an array. */
+    private static final int ARRAY_LIMIT = 4096;
+    /** Number of words of a bitmap container. */
+    private static final int WORDS = 1024;
+    /** Stored forms of a container. */
+    private static final int ARRAY = 0;
+    private static final int BITS = 1;
+    private static final int RUNS = 2;
+    /** Operations on a pair of containers. */
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int AND_NOT = 2;
+
+    /** The high 16 bits of the ints of each container, in increasing
+     *  order. */
+    private final int[] keys;
+    /** The containers: a char[] of sorted low bits or a long[] bitmap. */
+    private final Object[] containers;
+
+    private Bitmap(int[] keys, Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    /** Return the set of the indices of the bits set in BITS. */
+    static Bitmap of(BitSet bits) {
+        long[] words = bits.toLongArray();
+        int chunks = (words.length + WORDS - 1) / WORDS;
+        int[] keys = new int[chunks];
+        Object[] containers = new Object[chunks];
+        int n = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            long[] chunkWords = Arrays.copyOfRange(words, chunk * WORDS, (chunk + 1) * WORDS);
+            Object container = compact(chunkWords);
+            if (container != null) {
+                keys[n] = chunk;
+                containers[n] = container;
+                n++;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(keys, n), Arrays.copyOf(containers, n));
+    }
+
+    boolean contains(int x) {
+        int i = Arrays.binarySearch(keys, x >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) x;
+        Object container = containers[i];
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /** Return the number of ints in this set. */
+    int cardinality() {
+        int count = 0;
+        for (Object container : containers) {
+            count += cardinality(container);
+        }
+        return count;
+    }
+
+    Bitmap or(Bitmap other) {
+        return combine(other, OR);
+    }
+
+    Bitmap and(Bitmap other) {
+        return combine(other, AND);
+    }
+
+    /** Return the ints of this set that are not in OTHER. */
+    Bitmap andNot(Bitmap other) {
+        return combine(other, AND_NOT);
+    }
+
+    /** Return the set made by OP from this set and OTHER, chunk by chunk.
+     *  A chunk missing from one side counts as empty. */
+    private Bitmap combine(Bitmap other, int op) {
+        int[] newKeys = new int[keys.length + other.keys.length];
+        Object[] newContainers = new Object[newKeys.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            int key;
+            long[] a = null;
+            long[] b = null;
+            if (j == other.keys.length || i < keys.length && keys[i] < other.keys[j]) {
+                key = keys[i];
+                a = words(containers[i++]);
+            } else if (i == keys.length || other.keys[j] < keys[i]) {
+                key = other.keys[j];
+                b = words(other.containers[j++]);
+            } else {
+                key = keys[i];
+                a = words(containers[i++]);
+                b = words(other.containers[j++]);
+            }
+            long[] result = new long[WORDS];
+            for (int w = 0; w < WORDS; w++) {
+                long x = a == null ? 0 : a[w];
+                long y = b == null ? 0 : b[w];
+                result[w] = op == OR ? x | y : op == AND ? x & y : x & ~y;
+            }
+            Object container = compact(result);
+            if (container != null) {
+                newKeys[n] = key;
+                newContainers[n] = container;
+                n++;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(newKeys, n), Arrays.copyOf(newContainers, n));
+    }
+
+    /** Return WORDS as a container: null if no bit is set, an array of the
+     *  set bits if there are few, or WORDS itself. */
+    private static Object compact(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        if (count == 0) {
+            return null;
+        } else if (count > ARRAY_LIMIT) {
+            return words;
+        }
+        char[] values = new char[count];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+
+    /** Return CONTAINER as a bitmap of WORDS words. */
+    private static long[] words(Object container) {
+        if (container instanceof long[]) {
+            return (long[]) container;
+        }
+        long[] words = new long[WORDS];
+        for (char value : (char[]) container) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return words;
+    }
+
+    private static int cardinality(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int count = 0;
+        for (long word : (long[]) container) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** Write this set to OUT: the number of containers, then each one's
+     *  key, form and contents. An array is its length and values, a bitmap
+     *  its words, and a run list its length and the first value and length
+     *  less one of each run. */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeShort(keys[i]);
+            long[] words = words(containers[i]);
+            int count = cardinality(containers[i]);
+            int runs = runs(words);
+            if (4 * runs < Math.min(2 * count, 8 * WORDS)) {
+                out.writeByte(RUNS);
+                out.writeShort(runs - 1);
+                int value = 0;
+                while (value < WORDS * 64) {
+                    if (isSet(words, value)) {
+                        int start = value;
+                        while (value < WORDS * 64 && isSet(words, value)) {
+                            value++;
+                        }
+                        out.writeShort(start);
+                        out.writeShort(value - start - 1);
+                    } else {
+                        value++;
+                    }
+                }
+            } else if (containers[i] instanceof char[]) {
+                out.writeByte(ARRAY);
+                out.writeShort(count - 1);
+                for (char value : (char[]) containers[i]) {
+                    out.writeShort(value);
+                }
+            } else {
+                out.writeByte(BITS);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /** Return the set written to IN by write. */
+    static Bitmap read(DataInput in) throws IOException {
+        int n = in.readInt();
+        int[] keys = new int[n];
+        Object[] containers = new Object[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = in.readUnsignedShort();
+            int form = in.readUnsignedByte();
+            if (form == ARRAY) {
+                char[] values = new char[in.readUnsignedShort() + 1];
+                for (int v = 0; v < values.length; v++) {
+                    values[v] = in.readChar();
+                }
+                containers[i] = values;
+            } else if (form == BITS) {
+                long[] words = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) {
+                    words[w] = in.readLong();
+                }
+                containers[i] = words;
+            } else if (form == RUNS) {
+                long[] words = new long[WORDS];
+                int runs = in.readUnsignedShort() + 1;
+                for (int r = 0; r < runs; r++) {
+                    int start = in.readUnsignedShort();
+                    int end = start + in.readUnsignedShort();
+                    for (int value = start; value <= end; value++) {
+                        words[value >>> 6] |= 1L << value;
+                    }
+                }
+                containers[i] = compact(words);
+            } else {
+                throw error("Corrupt bitmap.");
+            }
+        }
+        return new Bitmap(keys, containers);
+    }
+
+    /** Return the number of runs of consecutive set bits in WORDS. */
+    private static int runs(long[] words) {
+        int runs = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = words[w];
+            long carry = w == 0 ? 0 : words[w - 1] >>> 63;
+            runs += Long.bitCount(word & ~(word << 1 | carry));
+        }
+        return runs;
+    }
+
+    private static boolean isSet(long[] words, int value) {
+        return (words[value >>> 6] & (1L << value)) != 0;
+    }
+}
@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/** A thin client for Daemon: runs a gitlet command in the daemon serving
+ *  the current directory, copying its output and exit status, or runs it
+ *  in this process through Main if no daemon is running. It loads none of
+ *  the rest of gitlet unless it has to run the command itself, which is
+ *  why it finds the socket on its own rather than through Repository.
+ *  @author Saksham Agarwal
+ */
+public class Client {
+
+    /** Usage: java gitlet.Client ARGS, with the ARGS of Main. */
+    public static void main(String[] args) {
+        SocketChannel daemon = connect();
+        if (daemon == null) {
+            Main.main(args);
+            return;
+        }
+        System.exit(forward(daemon, args));
+    }
+
+    /** Return a connection to the daemon serving the current directory,
+     *  or null if there is none. */
+    static SocketChannel connect() {
+        Path socket = Path.of(System.getProperty("user.dir"), ".gitlet", "daemon.sock");
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException | UnsupportedOperationException excp) {
+            return null;
+        }
+    }
+
+    /** Send the command ARGS to DAEMON, copy its output to this process's
+     *  standard output and error, and return its exit status. */
+    static int forward(SocketChannel daemon, String[] args) {
+        OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+        OutputStream stderr = new FileOutputStream(FileDescriptor.err);
+        try (daemon) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(daemon)));
+            out.writeUTF(System.getProperty("user.dir"));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(daemon), 1 << 16));
+            byte[] buf = new byte[1 << 16];
+            while (true) {
+                int type = in.readByte();
+                int n = in.readInt();
+                if (type == Daemon.EXIT) {
+                    return n;
+                }
+                OutputStream dest = type == Daemon.OUT ? stdout : stderr;
+                while (n > 0) {
+                    int chunk = Math.min(n, buf.length);
+                    in.readFully(buf, 0, chunk);
+                    dest.write(buf, 0, chunk);
+                    n -= chunk;
+                }
+            }
+        } catch (EOFException excp) {
+            System.err.println("The daemon closed the connection.");
+            return 1;
+        } catch (IOException excp) {
+            System.err.println("Cannot reach the daemon: " + excp.getMessage());
+            return 1;
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package gitlet;
 
 
-import java.io.File;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.util.Date;
-import java.util.List;
 import java.util.TreeMap;
 import java.text.SimpleDateFormat;
 import static gitlet.Utils.*;
@@ -20,13 +20,30 @@ public class Commit implements Serializable {
      * variable is used. We've provided one example for `message`.
      */
 
+    /** Serialization version of the original Commit class, kept so that
+     *  commits written by earlier versions can still be read. */
+    private static final long serialVersionUID = -3439083633739056199L;
+
+    private static final String DATE_FORMAT = "E MMM dd HH:mm:ss yyy Z";
+    /** First line of a stored commit. */
+    private static final String HEADER = "gitlet-commit 1";
+
     /** The message of this Commit. */
     private String message;
     private String date;
     private String parentID;
+    /** The files of a commit written before trees, by name; null for all
+     *  others. */
     private TreeMap<String, String> files;
     private String id;
     private String parent2ID;
+    /** The ID of the root tree of the files of this commit. */
+    private String treeID;
+    /** The files of this commit by name, read from its tree on first use. */
+    private transient TreeMap<String, String> flatFiles;
+    /** The time of this commit in milliseconds, or 0 if it was read from
+     *  a commit written before times were stored. */
+    private transient long time;
 
     public Commit(String message, String parentID) {
         this(message, new Date(), parentID);
@@ -37,35 +54,107 @@ public class Commit implements Serializable {
     }
 
     public Commit(String message, Date date, String parentID) {
-        this (message, dateFormatter(date), parentID);
+        this (message, date, parentID, null);
     }
 
-    public Commit(String message, String date, String parentID) {
+    /** A merge commit of PARENTID and PARENT2ID. */
+    public Commit(String message, Date date, String parentID, String parent2ID) {
         this.message = message;
-        this.date = date;
+        this.date = dateFormatter(date);
+        this.time = date.getTime();
         this.parentID = parentID;
-        this.parent2ID = null;
+        this.parent2ID = parent2ID;
         if (parentID != null) {
-            files = readObject(join(Repository.COMMITS, parentID), Commit.class).files;
-            trackadd();
-            trackRemove();
-            this.id = sha1(message, parentID, date, files.values().toString());
+            Index index = Index.load();
+            flatFiles = index.files();
+            treeID = index.writeTree();
+            index.save();
+            this.id = sha1(message, parentID, this.date, treeID);
         } else {
-            files = new TreeMap<>();
-            this.id = sha1(message, "", date, "");
+            flatFiles = new TreeMap<>();
+            treeID = Tree.write(flatFiles);
+            this.id = sha1(message, "", this.date, "");
         }
-        writeObject(join(Repository.COMMITS, id), this);
-        writeContents(Repository.HEAD, id);
-        writeContents(join(Repository.BRANCHES, readContentsAsString(Repository.CUR_BRANCH)), id());
+        Repository.objects().writeCommit(this);
+        Repository.added(this);
+        Refs refs = Refs.load();
+        refs.advance(id);
+        refs.save();
     }
 
     public String id() {
         return id;
     }
 
-    public void set2ndparent(String commitID) {
-        parent2ID = commitID;
-        writeObject(join(Repository.COMMITS, id), this);
+    /** A commit read from storage, filled in by decode. */
+    private Commit() {
+    }
+
+    /** Return the stored form of this commit: a header line naming the
+     *  format and its version, lines giving the root tree, each parent, the
+     *  time in milliseconds and the date as shown by log, then an empty line
+     *  and the message. */
+    byte[] encode() {
+        StringBuilder out = new StringBuilder(HEADER).append('\n');
+        out.append("tree ").append(treeID).append('\n');
+        for (String parent : new String[] {parentID, parent2ID}) {
+            if (parent != null) {
+                out.append("parent ").append(parent).append('\n');
+            }
+        }
+        out.append("time ").append(getTime()).append('\n');
+        out.append("date ").append(date).append('\n');
+        out.append('\n').append(message);
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return commit ID, stored as CONTENTS by encode. Only the header is
+     *  read here; the files are read from the tree when first asked for. */
+    static Commit decode(String id, byte[] contents) {
+        String text = new String(contents, StandardCharsets.UTF_8);
+        if (!text.startsWith(HEADER + "\n")) {
+            throw error("Corrupt commit object.");
+        }
+        Commit commit = new Commit();
+        commit.id = id;
+        int pos = HEADER.length() + 1;
+        while (pos < text.length() && text.charAt(pos) != '\n') {
+            int end = text.indexOf('\n', pos);
+            int space = text.indexOf(' ', pos);
+            if (end < 0 || space < 0 || space > end) {
+                throw error("Corrupt commit object.");
+            }
+            String value = text.substring(space + 1, end);
+            switch (text.substring(pos, space)) {
+                case "tree":
+                    commit.treeID = value;
+                    break;
+                case "parent":
+                    if (commit.parentID == null) {
+                        commit.parentID = value;
+                    } else {
+                        commit.parent2ID = value;
+                    }
+                    break;
+                case "time":
+                    commit.time = Long.parseLong(value);
+                    break;
+                case "date":
+                    commit.date = value;
+                    break;
+                default:
+                    break;
+            }
+            pos = end + 1;
+        }
+        commit.message = text.substring(Math.min(pos + 1, text.length()));
+        return commit;
+    }
+
+    /** Return true if this commit was written before trees, and so can
+     *  only be stored by Java serialization. */
+    boolean hasLegacyFiles() {
+        return files != null;
     }
 
     public String get2ndparent() {
@@ -80,40 +169,50 @@ public class Commit implements Serializable {
         return date;
     }
 
+    /** Return the time of this commit in milliseconds since the epoch. */
+    public long getTime() {
+        if (time != 0) {
+            return time;
+        }
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(date).getTime();
+        } catch (ParseException excp) {
+            throw error("Corrupt commit date.");
+        }
+    }
+
     public String getParentID() {
         return parentID;
     }
 
-    public TreeMap<String, String> getFiles() {
-        return files;
+    public String getTreeID() {
+        return treeID;
     }
 
-    private void trackadd() {
-        List<String> staged = plainFilenamesIn(Repository.STAGING_ADD);
-        assert staged != null;
-        for (String file: staged) {
-            if (files != null) {
-                files.remove(file);
-            }
-            File fileAddress = join(Repository.STAGING_ADD, file);
-            String blobSHA = Repository.blobHash(file, Repository.STAGING_ADD);
-            File blobAddress = join(Repository.BLOBS, blobSHA);
-            writeContents(blobAddress, readContentsAsString(fileAddress));
-            fileAddress.delete();
-            files.put(file, blobSHA);
+    public TreeMap<String, String> getFiles() {
+        if (files != null) {
+            return files;
+        }
+        if (flatFiles == null) {
+            flatFiles = Tree.flatten(treeID);
         }
+        return flatFiles;
     }
 
-    private void trackRemove() {
-        for (String file: plainFilenamesIn(Repository.STAGING_REMOVE)) {
-            files.remove(file);
-            File fileAddress = join(Repository.STAGING_REMOVE, file);
-            fileAddress.delete();
+    /** Store the file map of a commit written before trees as a tree.
+     *  Return false if this commit already has a tree. */
+    boolean moveFilesToTree() {
+        if (files == null) {
+            return false;
         }
+        treeID = Tree.write(files);
+        flatFiles = files;
+        files = null;
+        return true;
     }
 
     private static String dateFormatter(Date d) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("E MMM dd HH:mm:ss yyy Z");
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
         return dateFormat.format(d);
     }
 }
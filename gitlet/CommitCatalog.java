@@ -0,0 +1,455 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import static gitlet.Utils.*;
+
+/** The commit catalog: the ID, parents, time, date and message of every
+ *  commit, one record after another in the single file Repository.CATALOG,
+ *  so that global-log is one sequential read and find reads no commit
+ *  objects. A record is appended whenever a commit is made; a catalog
+ *  that is missing is rebuilt from the commit objects.
+ *
+ *  Messages are looked up through a trigram index kept in
+ *  Repository.CATALOG_INDEX, which maps every three consecutive characters
+ *  of the messages of the first records to the numbers of the records
+ *  whose messages contain them. Records appended after the index was
+ *  built are scanned; once there are more of them than TAIL_LIMIT, or an
+ *  eighth of the indexed ones, the index is built again.
+ *
+ *  A record is its length, then the 20-byte ID, the number of parents and
+ *  their IDs, the time in milliseconds, the date and the UTF-8 bytes of
+ *  the message. The index file is the magic "GCIX", a version, the number
+ *  of records indexed, the offset in the catalog of the first one not
+ *  indexed and of each one indexed, the number of trigrams, then each
+ *  trigram in order with the position of its first record number, the
+ *  total count of record numbers, and the record numbers.
+ *  @author Saksham Agarwal
+ */
+class CommitCatalog {
+
+    private static final int MAGIC = 0x47434958;
+    private static final int VERSION = 1;
+    /** Least number of records scanned past the index before it is built
+     *  again. */
+    private static final int TAIL_LIMIT = 256;
+
+    /** One record of the catalog. */
+    static class Record {
+        private final String id;
+        private final String parent;
+        private final String parent2;
+        private final long time;
+        private final String date;
+        private final String message;
+
+        Record(String id, String parent, String parent2, long time,
+               String date, String message) {
+            this.id = id;
+            this.parent = parent;
+            this.parent2 = parent2;
+            this.time = time;
+            this.date = date;
+            this.message = message;
+        }
+
+        String id() {
+            return id;
+        }
+
+        String parent() {
+            return parent;
+        }
+
+        String parent2() {
+            return parent2;
+        }
+
+        long time() {
+            return time;
+        }
+
+        String date() {
+            return date;
+        }
+
+        String message() {
+            return message;
+        }
+    }
+
+    /** Add records of COMMITS to the end of the catalog in one write.
+     *  Nothing is written if there is no catalog yet, since it is built
+     *  whole when it is first read. */
+    static void append(List<Commit> commits) {
+        if (Repository.CATALOG.isFile()) {
+            cutTornRecord();
+            write(commits, Repository.CATALOG, StandardOpenOption.APPEND);
+        }
+    }
+
+    /** Cut off the record left incomplete at the end of the catalog by a
+     *  crash while it was being appended, if there is one, so that the
+     *  records appended after it are not read as its rest. The records
+     *  past those indexed are walked by their lengths alone to find the
+     *  end of the last whole one. */
+    private static void cutTornRecord() {
+        TrigramIndex index = TrigramIndex.read();
+        long end = index == null ? 0 : index.tailOffset;
+        try (FileChannel channel = FileChannel.open(Repository.CATALOG.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(Math.min(end, size))),
+                    Pack.BUFFER_SIZE));
+            while (end + 4 <= size) {
+                int length = in.readInt();
+                if (length < 0 || end + 4 + length > size) {
+                    break;
+                }
+                in.skipNBytes(length);
+                end += 4 + length;
+            }
+            if (end < size) {
+                channel.truncate(end);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit catalog.");
+        }
+    }
+
+    /** Call VISIT on every record of the catalog, in the order the commits
+     *  were added. */
+    static void forEach(Consumer<Record> visit) {
+        scan(0, visit);
+    }
+
+    /** Return the IDs of the commits whose message is TEXT or, if
+     *  SUBSTRING, contains TEXT, in the order they were added. */
+    static List<String> find(String text, boolean substring) {
+        ensureCatalog();
+        List<String> found = new ArrayList<>();
+        Consumer<Record> match = record -> {
+            if (substring ? record.message.contains(text) : record.message.equals(text)) {
+                found.add(record.id);
+            }
+        };
+        TrigramIndex index = TrigramIndex.read();
+        if (index != null) {
+            try (RandomAccessFile catalog = new RandomAccessFile(Repository.CATALOG, "r")) {
+                for (int number : index.candidates(text)) {
+                    catalog.seek(index.offset(number));
+                    match.accept(readRecord(catalog, catalog.readInt()));
+                }
+            } catch (IOException excp) {
+                throw error("Cannot read commit catalog.");
+            }
+        }
+        int indexed = index == null ? 0 : index.count;
+        int tail = scan(index == null ? 0 : index.tailOffset, match);
+        if (tail > Math.max(TAIL_LIMIT, indexed / 8)) {
+            TrigramIndex.build();
+        }
+        return found;
+    }
+
+    /** Call VISIT on the records of the catalog from byte OFFSET on, and
+     *  return how many there were. A record cut short by a crash while it
+     *  was being appended is ignored, and cut off before the next records
+     *  are appended. */
+    private static int scan(long offset, Consumer<Record> visit) {
+        ensureCatalog();
+        int count = 0;
+        try (FileInputStream file = new FileInputStream(Repository.CATALOG)) {
+            file.getChannel().position(offset);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(file, Pack.BUFFER_SIZE));
+            while (true) {
+                Record record;
+                try {
+                    record = readRecord(in, in.readInt());
+                } catch (EOFException excp) {
+                    return count;
+                }
+                visit.accept(record);
+                count++;
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read commit catalog.");
+        }
+    }
+
+    /** Build the catalog from the commit objects if it does not exist. */
+    private static void ensureCatalog() {
+        if (Repository.CATALOG.isFile()) {
+            return;
+        }
+        ObjectDatabase objects = Repository.objects();
+        List<Commit> commits = new ArrayList<>();
+        for (String id : objects.commitIds()) {
+            commits.add(objects.readCommit(id));
+        }
+        File tmp = Repository.tempFile("catalog");
+        write(commits, tmp);
+        try {
+            Files.move(tmp.toPath(), Repository.CATALOG.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("Cannot write commit catalog.");
+        }
+        Repository.CATALOG_INDEX.delete();
+    }
+
+    /** Write the records of COMMITS to the end of DEST, opened with
+     *  OPTIONS, in a single write. */
+    private static void write(List<Commit> commits, File dest, OpenOption... options) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Commit c : commits) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                DataOutputStream record = new DataOutputStream(body);
+                record.write(Pack.toBytes(c.id()));
+                String parent2 = c.get2ndparent();
+                record.writeByte(c.getParentID() == null ? 0 : parent2 == null ? 1 : 2);
+                if (c.getParentID() != null) {
+                    record.write(Pack.toBytes(c.getParentID()));
+                }
+                if (parent2 != null) {
+                    record.write(Pack.toBytes(parent2));
+                }
+                record.writeLong(c.getTime());
+                record.writeUTF(c.getDate());
+                record.write(c.getMessage().getBytes(StandardCharsets.UTF_8));
+                out.writeInt(body.size());
+                body.writeTo(out);
+            }
+            Files.write(dest.toPath(), bytes.toByteArray(), options);
+        } catch (IOException excp) {
+            throw error("Cannot write commit catalog.");
+        }
+    }
+
+    /** Return the next record of IN, whose length has been read as
+     *  LENGTH. */
+    private static Record readRecord(DataInput in, int length) throws IOException {
+        byte[] body = new byte[length];
+        in.readFully(body);
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+        byte[] raw = new byte[20];
+        record.readFully(raw);
+        String id = Pack.toHex(raw);
+        int parents = record.readByte();
+        String[] parentIds = new String[2];
+        for (int i = 0; i < parents; i++) {
+            record.readFully(raw);
+            parentIds[i] = Pack.toHex(raw);
+        }
+        long time = record.readLong();
+        String date = record.readUTF();
+        String message = new String(body, length - record.available(), record.available(),
+                StandardCharsets.UTF_8);
+        return new Record(id, parentIds[0], parentIds[1], time, date, message);
+    }
+
+    /** Return the trigrams of TEXT, each packed into a long. */
+    private static TreeSet<Long> trigrams(String text) {
+        TreeSet<Long> grams = new TreeSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16)
+                    | text.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    /** The trigram index of the first records of the catalog. */
+    private static class TrigramIndex {
+        /** Offsets of the parts of the index file. */
+        private static final int OFFSETS = 20;
+
+        /** The mapped index file. */
+        private final MappedByteBuffer map;
+        /** Number of records indexed. */
+        private final int count;
+        /** Offset in the catalog of the first record not indexed. */
+        private final long tailOffset;
+        /** Number of trigrams. */
+        private final int grams;
+        /** Offsets of the trigram table and of the record numbers. */
+        private final int table;
+        private final int postings;
+
+        private TrigramIndex(MappedByteBuffer map) {
+            this.map = map;
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw error("Corrupt commit catalog index.");
+            }
+            count = map.getInt(8);
+            tailOffset = map.getLong(12);
+            grams = map.getInt(OFFSETS + count * 8);
+            table = OFFSETS + count * 8 + 4;
+            postings = table + grams * 12 + 4;
+        }
+
+        /** Return the index, or null if it has not been built. */
+        static TrigramIndex read() {
+            if (!Repository.CATALOG_INDEX.isFile()) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(Repository.CATALOG_INDEX.toPath())) {
+                return new TrigramIndex(
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IOException excp) {
+                throw error("Cannot read commit catalog index.");
+            }
+        }
+
+        /** Index every record of the catalog and replace the index file. */
+        static void build() {
+            List<Long> offsets = new ArrayList<>();
+            TreeMap<Long, List<Integer>> index = new TreeMap<>();
+            long offset = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(Repository.CATALOG), Pack.BUFFER_SIZE))) {
+                while (true) {
+                    Record record;
+                    int length;
+                    try {
+                        length = in.readInt();
+                        record = readRecord(in, length);
+                    } catch (EOFException excp) {
+                        break;
+                    }
+                    int number = offsets.size();
+                    offsets.add(offset);
+                    offset += 4 + length;
+                    for (long gram : trigrams(record.message)) {
+                        index.computeIfAbsent(gram, k -> new ArrayList<>()).add(number);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Cannot read commit catalog.");
+            }
+            File tmp = Repository.tempFile("catalog-index");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp), Pack.BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(offsets.size());
+                out.writeLong(offset);
+                for (long o : offsets) {
+                    out.writeLong(o);
+                }
+                out.writeInt(index.size());
+                int start = 0;
+                for (Map.Entry<Long, List<Integer>> entry : index.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeInt(start);
+                    start += entry.getValue().size();
+                }
+                out.writeInt(start);
+                for (List<Integer> numbers : index.values()) {
+                    for (int number : numbers) {
+                        out.writeInt(number);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Cannot write commit catalog index.");
+            }
+            try {
+                Files.move(tmp.toPath(), Repository.CATALOG_INDEX.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw error("Cannot write commit catalog index.");
+            }
+        }
+
+        long offset(int number) {
+            return map.getLong(OFFSETS + number * 8);
+        }
+
+        /** Return the numbers of the indexed records whose messages may
+         *  contain TEXT, in increasing order: those with every trigram of
+         *  TEXT, or all of them if TEXT is too short to have any. */
+        List<Integer> candidates(String text) {
+            TreeSet<Long> wanted = trigrams(text);
+            List<Integer> result = null;
+            for (long gram : wanted) {
+                int slot = slot(gram);
+                if (slot < 0) {
+                    return new ArrayList<>();
+                }
+                List<Integer> numbers = new ArrayList<>();
+                int j = 0;
+                for (int i = start(slot); i < start(slot + 1); i++) {
+                    int number = map.getInt(postings + i * 4);
+                    if (result == null) {
+                        numbers.add(number);
+                        continue;
+                    }
+                    while (j < result.size() && result.get(j) < number) {
+                        j++;
+                    }
+                    if (j < result.size() && result.get(j) == number) {
+                        numbers.add(number);
+                    }
+                }
+                result = numbers;
+            }
+            if (result == null) {
+                result = new ArrayList<>();
+                for (int number = 0; number < count; number++) {
+                    result.add(number);
+                }
+            }
+            return result;
+        }
+
+        /** Return the position among the record numbers of the first one
+         *  of trigram SLOT, or the total number for the slot past the last. */
+        private int start(int slot) {
+            return map.getInt(table + slot * 12 + (slot < grams ? 8 : 0));
+        }
+
+        /** Return the position of GRAM in the trigram table, or -1. */
+        private int slot(long gram) {
+            int lo = 0;
+            int hi = grams - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long probe = map.getLong(table + mid * 12);
+                if (probe < gram) {
+                    lo = mid + 1;
+                } else if (probe > gram) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
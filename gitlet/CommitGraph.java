@@ -0,0 +1,349 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+import static gitlet.Utils.*;
+
+/** The commit graph: the parents, time and generation number of every
+ *  commit, kept in Repository.COMMIT_GRAPH so that history can be walked
+ *  without reading commit objects. Commits are numbered by their position
+ *  in the file, which only grows: a commit is appended when it is made,
+ *  after its parents. The generation of a root commit is 1 and that of
+ *  any other commit is one more than the largest of its parents'.
+ *
+ *  The file is the magic "GCGR" and a version, then one fixed-size record
+ *  per commit: its 20-byte ID, the positions of its first and second
+ *  parents (NONE if absent), its time in milliseconds and its generation.
+ *  A graph file that is missing is rebuilt from the commit objects, whole,
+ *  in a temporary file, and a commit missing from it is appended when it
+ *  is first looked up.
+ *  @author Saksham Agarwal
+ */
+class CommitGraph {
+
+    /** Position of an absent parent. */
+    static final int NONE = -1;
+
+    private static final int MAGIC = 0x47434752;
+    private static final int VERSION = 1;
+    private static final int HEADER = 8;
+    private static final int RECORD = 40;
+    /** Offsets of the fields of a record. */
+    private static final int PARENT1 = 20;
+    private static final int PARENT2 = 24;
+    private static final int TIME = 28;
+    private static final int GENERATION = 36;
+    /** Marks of the merge-base walk: reachable from the first commit, from
+     *  the second, and below a merge base already found. */
+    private static final int FROM1 = 1;
+    private static final int FROM2 = 2;
+    private static final int STALE = 4;
+
+    /** The graph of the repository, once loaded. */
+    private static CommitGraph loaded;
+
+    /** The graph file, and its mapping. */
+    private final File file;
+    private MappedByteBuffer map;
+    /** Number of commits in the graph. */
+    private int count;
+    /** The positions of the commits, by ID. */
+    private final HashMap<String, Integer> positions = new HashMap<>();
+    /** The generations of the commits numbered since the file was last
+     *  mapped, by position. */
+    private final HashMap<Integer, Integer> unmapped = new HashMap<>();
+
+    private CommitGraph(File file) {
+        this.file = file;
+    }
+
+    /** Return the commit graph of the repository, reading it on first use
+     *  and building it if it does not exist. */
+    static CommitGraph load() {
+        if (loaded == null) {
+            if (!Repository.COMMIT_GRAPH.isFile()) {
+                build();
+            }
+            loaded = new CommitGraph(Repository.COMMIT_GRAPH);
+            loaded.map();
+        }
+        return loaded;
+    }
+
+    /** Build the graph file from the commit objects. It is written to a
+     *  temporary file and renamed into place, as the other files built from
+     *  the objects are, so that a reader never maps one half written and
+     *  two processes building it at once do not write into the same file.
+     *  One that finds the graph built by another meanwhile keeps that one.
+     *  The commit index and the reachability bitmaps, which number commits
+     *  by their positions in the graph, are deleted. */
+    private static void build() {
+        Repository.COMMIT_IDS.delete();
+        Repository.BITMAPS.delete();
+        Reachability.reload();
+        CommitGraph graph = new CommitGraph(Repository.tempFile("commit-graph"));
+        graph.create();
+        graph.map();
+        graph.append(Repository.objects().commitIds());
+        try {
+            if (Repository.COMMIT_GRAPH.isFile()) {
+                Files.delete(graph.file.toPath());
+            } else {
+                Files.move(graph.file.toPath(), Repository.COMMIT_GRAPH.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph.");
+        }
+    }
+
+    /** Return the commit graph of another repository, whose gitlet
+     *  directory is DIR, to be read only: it is never extended, so only
+     *  commits it holds may be looked up in it, by find. */
+    static CommitGraph open(File dir) {
+        CommitGraph graph = new CommitGraph(join(dir, Repository.COMMIT_GRAPH.getName()));
+        if (!graph.file.isFile()) {
+            throw error("Cannot read commit graph.");
+        }
+        graph.map();
+        return graph;
+    }
+
+    /** Forget the graph read so far, so that it is read again on next use. */
+    static void reload() {
+        loaded = null;
+    }
+
+    /** Number of commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    String id(int pos) {
+        byte[] raw = new byte[20];
+        map.get(HEADER + pos * RECORD, raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Return a checksum of the IDs of the first N commits, in order of
+     *  position, by which files that number commits by position check that
+     *  they were built from this graph. */
+    long checksum(int n) {
+        CRC32 crc = new CRC32();
+        byte[] raw = new byte[20];
+        for (int pos = 0; pos < n; pos++) {
+            map.get(HEADER + pos * RECORD, raw);
+            crc.update(raw);
+        }
+        return crc.getValue();
+    }
+
+    /** Return the position of the first (WHICH == 0) or second parent of
+     *  the commit at POS, or NONE. */
+    int parent(int pos, int which) {
+        return map.getInt(HEADER + pos * RECORD + (which == 0 ? PARENT1 : PARENT2));
+    }
+
+    long time(int pos) {
+        return map.getLong(HEADER + pos * RECORD + TIME);
+    }
+
+    int generation(int pos) {
+        return map.getInt(HEADER + pos * RECORD + GENERATION);
+    }
+
+    /** Return the position of commit ID, first appending it and any of its
+     *  ancestors that are missing from the graph. */
+    int position(String id) {
+        Integer pos = positions.get(id);
+        if (pos == null) {
+            append(List.of(id));
+            pos = positions.get(id);
+        }
+        return pos;
+    }
+
+    /** Append the commits IDS and any of their ancestors that are missing
+     *  from the graph, in one write. */
+    void append(List<String> ids) {
+        Deque<String> pending = new ArrayDeque<>();
+        HashMap<String, Commit> read = new HashMap<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        long offset = HEADER + (long) count * RECORD;
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            pending.push(ids.get(i));
+        }
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            if (positions.containsKey(next)) {
+                pending.pop();
+                continue;
+            }
+            Commit c = read.computeIfAbsent(next, Repository.objects()::readCommit);
+            String missing = null;
+            for (String parent : new String[] {c.getParentID(), c.get2ndparent()}) {
+                if (parent != null && !positions.containsKey(parent)) {
+                    missing = parent;
+                }
+            }
+            if (missing != null) {
+                pending.push(missing);
+                continue;
+            }
+            records.writeBytes(record(c));
+            pending.pop();
+            read.remove(next);
+        }
+        if (records.size() > 0) {
+            write(ByteBuffer.wrap(records.toByteArray()), offset);
+            map();
+        }
+    }
+
+    /** Return the position of commit ID, or NONE if it is not in the
+     *  graph. */
+    int find(String id) {
+        Integer pos = positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    /** Return the positions of the best common ancestors of the commits at
+     *  positions A and B: those common ancestors that are not ancestors of
+     *  another. There is more than one after a criss-cross merge.
+     *
+     *  Both commits are walked at once, always expanding the commit of
+     *  highest generation. A commit's generation is greater than that of
+     *  any of its ancestors, so a commit is expanded only after all of its
+     *  descendants in the walk, with all the marks it will get. One marked
+     *  from both sides is a merge base, and the commits below it are marked
+     *  stale. The walk ends when only stale commits are left, so it visits
+     *  only the commits between A, B and their merge bases. */
+    List<Integer> mergeBases(int a, int b) {
+        List<Integer> bases = new ArrayList<>();
+        if (a == b) {
+            bases.add(a);
+            return bases;
+        }
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byGeneration());
+        marks.put(a, FROM1);
+        marks.put(b, FROM2);
+        queue.add(a);
+        queue.add(b);
+        int active = 2;
+        while (active > 0) {
+            int pos = queue.remove();
+            int mark = marks.get(pos);
+            if ((mark & STALE) == 0) {
+                active--;
+                if (mark == (FROM1 | FROM2)) {
+                    bases.add(pos);
+                    mark |= STALE;
+                }
+            }
+            for (int which = 0; which < 2; which++) {
+                int parent = parent(pos, which);
+                if (parent == NONE) {
+                    continue;
+                }
+                Integer old = marks.get(parent);
+                if (old == null) {
+                    marks.put(parent, mark);
+                    queue.add(parent);
+                    if ((mark & STALE) == 0) {
+                        active++;
+                    }
+                } else if ((old & mark) != mark) {
+                    marks.put(parent, old | mark);
+                    if ((old & STALE) == 0 && (mark & STALE) != 0) {
+                        active--;
+                    }
+                }
+            }
+        }
+        return bases;
+    }
+
+    /** Order of commits from the highest generation down, and from the
+     *  newest down among commits of equal generation. */
+    private Comparator<Integer> byGeneration() {
+        return Comparator.<Integer>comparingInt(this::generation).reversed()
+                .thenComparing(Comparator.<Integer>comparingLong(this::time).reversed());
+    }
+
+    /** Return the record of C, whose parents are in the graph, numbering
+     *  it after the last commit. */
+    private byte[] record(Commit c) {
+        int p1 = c.getParentID() == null ? NONE : positions.get(c.getParentID());
+        int p2 = c.get2ndparent() == null ? NONE : positions.get(c.get2ndparent());
+        int generation = 1;
+        for (int p : List.of(p1, p2)) {
+            if (p != NONE) {
+                generation = Math.max(generation, generationOf(p) + 1);
+            }
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        record.put(Pack.toBytes(c.id()));
+        record.putInt(p1).putInt(p2).putLong(c.getTime()).putInt(generation);
+        positions.put(c.id(), count);
+        unmapped.put(count, generation);
+        count++;
+        return record.array();
+    }
+
+    /** Return the generation of the commit at POS, which may not have
+     *  been written yet. */
+    private int generationOf(int pos) {
+        Integer generation = unmapped.get(pos);
+        return generation != null ? generation : generation(pos);
+    }
+
+    private void create() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        write(header, 0);
+    }
+
+    private void write(ByteBuffer data, long offset) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            while (data.hasRemaining()) {
+                offset += channel.write(data, offset);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph.");
+        }
+    }
+
+    /** Map the graph file and index the IDs it holds. */
+    private void map() {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw error("Cannot read commit graph.");
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw error("Corrupt commit graph.");
+        }
+        count = (map.capacity() - HEADER) / RECORD;
+        unmapped.clear();
+        for (int pos = positions.size(); pos < count; pos++) {
+            positions.put(id(pos), pos);
+        }
+    }
+}
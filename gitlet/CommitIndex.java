@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static gitlet.Utils.*;
+
+/** The sorted index of commit IDs in Repository.COMMIT_IDS, through which
+ *  abbreviated commit IDs are resolved. It holds the IDs of the first
+ *  commits of the commit graph; commits added to the graph since it was
+ *  built are checked one by one, and once there are more of them than
+ *  TAIL_LIMIT, or an eighth of the indexed ones, it is built again.
+ *
+ *  The file is the magic "GCID", a version and the number of commits
+ *  indexed, then a 256-entry fan-out table whose entry B is the number of
+ *  IDs whose first byte is at most B, then the sorted 20-byte IDs.
+ *  @author Saksham Agarwal
+ */
+class CommitIndex {
+
+    private static final int MAGIC = 0x47434944;
+    private static final int VERSION = 1;
+    private static final int FANOUT = 256;
+    private static final int ID_BYTES = 20;
+    /** Offset of the first ID. */
+    private static final int IDS = 12 + FANOUT * 4;
+    /** Least number of unindexed commits checked one by one before the
+     *  index is built again. */
+    private static final int TAIL_LIMIT = 256;
+
+    /** The mapped index file, or null if there is none. */
+    private final MappedByteBuffer map;
+    /** Number of commits indexed. */
+    private final int count;
+
+    private CommitIndex(MappedByteBuffer map) {
+        this.map = map;
+        if (map == null) {
+            count = 0;
+            return;
+        }
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw error("Corrupt commit index.");
+        }
+        count = map.getInt(8);
+    }
+
+    /** Return the IDs of the commits that start with PREFIX, a string of
+     *  hexadecimal digits: none, the one commit meant, or, if PREFIX is
+     *  ambiguous, two or more of those it could mean. */
+    static List<String> resolve(String prefix) {
+        List<String> found = new ArrayList<>();
+        String lower = prefix.toLowerCase();
+        if (lower.isEmpty() || lower.length() > 2 * ID_BYTES
+                || !lower.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return found;
+        }
+        CommitGraph graph = CommitGraph.load();
+        CommitIndex index = read();
+        index.search(lower, found);
+        for (int pos = index.count; pos < graph.size(); pos++) {
+            String id = graph.id(pos);
+            if (id.startsWith(lower)) {
+                found.add(id);
+            }
+        }
+        if (graph.size() - index.count > Math.max(TAIL_LIMIT, index.count / 8)) {
+            build(graph);
+        }
+        return found;
+    }
+
+    /** Add to FOUND up to two indexed IDs starting with PREFIX. The fan-out
+     *  table gives the range of IDs sharing PREFIX's first byte, which is
+     *  then searched for the first ID not less than PREFIX. */
+    private void search(String prefix, List<String> found) {
+        if (count == 0) {
+            return;
+        }
+        String firstByte = prefix.length() == 1 ? prefix + "0" : prefix.substring(0, 2);
+        int first = Integer.parseInt(firstByte, 16);
+        int last = prefix.length() == 1 ? first + 15 : first;
+        int lo = first == 0 ? 0 : map.getInt(12 + (first - 1) * 4);
+        int hi = map.getInt(12 + last * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (abbreviation(mid, prefix.length()).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int pos = lo; pos < count && found.size() < 2; pos++) {
+            String id = id(pos);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            found.add(id);
+        }
+    }
+
+    private String id(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        map.get(IDS + pos * ID_BYTES, raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Return the first LENGTH hexadecimal digits of the ID at POS. */
+    private String abbreviation(int pos, int length) {
+        byte[] raw = new byte[(length + 1) / 2];
+        map.get(IDS + pos * ID_BYTES, raw);
+        return Pack.toHex(raw).substring(0, length);
+    }
+
+    /** Return the index, or an empty one if it has not been built. */
+    private static CommitIndex read() {
+        if (!Repository.COMMIT_IDS.isFile()) {
+            return new CommitIndex(null);
+        }
+        try (FileChannel channel = FileChannel.open(Repository.COMMIT_IDS.toPath())) {
+            return new CommitIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException excp) {
+            throw error("Cannot read commit index.");
+        }
+    }
+
+    /** Index every commit of GRAPH and replace the index file. */
+    private static void build(CommitGraph graph) {
+        String[] ids = new String[graph.size()];
+        for (int pos = 0; pos < ids.length; pos++) {
+            ids[pos] = graph.id(pos);
+        }
+        Arrays.sort(ids);
+        File tmp = Repository.tempFile("commit-ids");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), Pack.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.length);
+            int pos = 0;
+            for (int b = 0; b < FANOUT; b++) {
+                while (pos < ids.length && Integer.parseInt(ids[pos].substring(0, 2), 16) <= b) {
+                    pos++;
+                }
+                out.writeInt(pos);
+            }
+            for (String id : ids) {
+                out.write(Pack.toBytes(id));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write commit index.");
+        }
+        try {
+            Files.move(tmp.toPath(), Repository.COMMIT_IDS.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write commit index.");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import static gitlet.Utils.*;
+
+/** A long-running gitlet that serves the commands of Client over the Unix
+ *  domain socket Repository.DAEMON_SOCKET, so that they run in a warm JVM
+ *  with the repository's objects, index and commit graph already loaded.
+ *  Commands run one at a time through Main.main, exactly as they would in
+ *  a process of their own. Before each one, and again once a command that
+ *  changes the repository holds its locks, the daemon forgets everything
+ *  it has read if another process has changed the repository since, as
+ *  Repository.refresh tells.
+ *
+ *  A request is the client's working directory, the number of arguments
+ *  and the arguments. The reply is a sequence of frames, each a type byte
+ *  and an int: OUT and ERR frames carry that many bytes of standard output
+ *  or error, and an EXIT frame ends the reply with the exit status.
+ *  @author Saksham Agarwal
+ */
+class Daemon {
+
+    /** Frame types. */
+    static final int OUT = 1;
+    static final int ERR = 2;
+    static final int EXIT = 3;
+
+    /** Serve commands until a client asks the daemon to stop. */
+    static void serve() {
+        if (isRunning()) {
+            throw error("A daemon is already running.");
+        }
+        File socket = Repository.DAEMON_SOCKET;
+        socket.delete();
+        Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    Repository.refresh();
+                    running = handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot listen on %s.", socket.getPath());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Return true if a daemon already serves the current directory. */
+    private static boolean isRunning() {
+        try (SocketChannel other = Client.connect()) {
+            return other != null;
+        } catch (IOException excp) {
+            return true;
+        }
+    }
+
+    /** Run the command sent by CLIENT and send back its output. Return
+     *  false if the command was to stop the daemon. */
+    private static boolean handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(client), Pack.BUFFER_SIZE));
+        String cwd = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream clientOut = new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, OUT), Pack.BUFFER_SIZE), false);
+        PrintStream clientErr = new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, ERR), Pack.BUFFER_SIZE), false);
+        int status = 0;
+        boolean stop = Arrays.equals(args, new String[] {"daemon", "stop"});
+        System.setOut(clientOut);
+        System.setErr(clientErr);
+        try {
+            if (!new File(cwd).equals(Repository.CWD)) {
+                System.err.println("The daemon serves " + Repository.CWD.getPath() + ".");
+                status = 1;
+            } else if (!stop) {
+                Main.main(args);
+            }
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        clientOut.flush();
+        clientErr.flush();
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+        return !stop;
+    }
+
+    /** A stream that sends what is written to it as frames of one type. */
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+
+        FrameStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.writeByte(type);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Computes and applies binary deltas between two versions of an object.
+ *  A delta is the target's length followed by a sequence of
+ *  instructions: a COPY instruction (high bit set) names an offset and a
+ *  length in the base, an INSERT instruction carries up to 127 literal
+ *  bytes of the target.
+ *  @author Saksham Agarwal
+ */
+class Delta {
+
+    /** Width of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+    /** Longest run of literal bytes carried by one INSERT instruction. */
+    private static final int MAX_INSERT = 127;
+    /** Tag byte of a COPY instruction. */
+    private static final int COPY = 0x80;
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, target.length);
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < target.length) {
+            Integer start = null;
+            if (pos + BLOCK <= target.length) {
+                start = blocks.get(blockHash(target, pos));
+            }
+            int len = 0;
+            if (start != null) {
+                while (start + len < base.length && pos + len < target.length
+                        && base[start + len] == target[pos + len]) {
+                    len++;
+                }
+            }
+            if (len < BLOCK) {
+                literal.write(target[pos]);
+                pos++;
+                if (literal.size() == MAX_INSERT) {
+                    flushInsert(out, literal);
+                }
+                continue;
+            }
+            flushInsert(out, literal);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, len);
+            pos += len;
+        }
+        flushInsert(out, literal);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++] & 0xff;
+            if (op == COPY) {
+                int start = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, start, result, written, len);
+                written += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, written, op);
+                pos[0] += op;
+                written += op;
+            }
+        }
+        if (written != result.length) {
+            throw new GitletException("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Write the pending literal bytes in LITERAL to OUT as an INSERT. */
+    private static void flushInsert(ByteArrayOutputStream out, ByteArrayOutputStream literal) {
+        if (literal.size() > 0) {
+            out.write(literal.size());
+            out.write(literal.toByteArray(), 0, literal.size());
+            literal.reset();
+        }
+    }
+
+    private static int blockHash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * 31 + data[i];
+        }
+        return h;
+    }
+
+    /** Write VAL to OUT as an unsigned little-endian base-128 varint. */
+    static void writeVarint(ByteArrayOutputStream out, long val) {
+        while ((val & ~0x7fL) != 0) {
+            out.write((int) ((val & 0x7f) | 0x80));
+            val >>>= 7;
+        }
+        out.write((int) val);
+    }
+
+    /** Read a varint from DATA starting at POS[0], advancing POS[0]. */
+    static long readVarint(byte[] data, int[] pos) {
+        long val = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++] & 0xff;
+            val |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return val;
+    }
+}
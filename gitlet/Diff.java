@@ -0,0 +1,363 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line-based differences between texts, found with Myers' algorithm in
+ *  its linear-space form, and the three-way merge built on them. Texts
+ *  are read as ISO-8859-1, which maps each byte to one character, so that
+ *  lines in any encoding are compared and written back byte for byte;
+ *  each line keeps its terminating newline, if it has one.
+ *  @author Saksham Agarwal
+ */
+class Diff {
+
+    /** Lines of unchanged context around the changes of a hunk. */
+    private static final int CONTEXT = 3;
+    /** Markers around the two sides of a merge conflict. */
+    private static final String OURS = "<<<<<<< HEAD\n";
+    private static final String SEPARATOR = "=======\n";
+    private static final String THEIRS = ">>>>>>>\n";
+
+    /** A change: lines [aStart, aEnd) of the first text replaced by lines
+     *  [bStart, bEnd) of the second. */
+    static class Edit {
+        private final int aStart;
+        private final int aEnd;
+        private final int bStart;
+        private final int bEnd;
+
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    /** The two texts being compared, as numbers standing for their
+     *  distinct lines, and the lines found deleted from the first and
+     *  inserted into the second. */
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+
+    private Diff(List<String> first, List<String> second) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        a = number(first, numbers);
+        b = number(second, numbers);
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+    }
+
+    private static int[] number(List<String> lines, HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer n = numbers.putIfAbsent(lines.get(i), numbers.size());
+            result[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return result;
+    }
+
+    /** Return the changes that turn lines A into lines B, in order. */
+    static List<Edit> diff(List<String> a, List<String> b) {
+        Diff diff = new Diff(a, b);
+        diff.compare(0, a.size(), 0, b.size());
+        List<Edit> edits = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            if (i < a.size() && diff.deleted[i] || j < b.size() && diff.inserted[j]) {
+                int aStart = i;
+                int bStart = j;
+                while (i < a.size() && diff.deleted[i]) {
+                    i++;
+                }
+                while (j < b.size() && diff.inserted[j]) {
+                    j++;
+                }
+                edits.add(new Edit(aStart, i, bStart, j));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return edits;
+    }
+
+    /** Mark the lines deleted from A[ALO, AHI) and inserted into
+     *  B[BLO, BHI) by a shortest edit script between them. Common leading
+     *  and trailing lines are skipped; what remains is split at a point
+     *  of a shortest script and each side compared in turn. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j++) {
+                inserted[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i++) {
+                deleted[i] = true;
+            }
+        } else {
+            int[] split = split(aLo, aHi, bLo, bHi);
+            compare(aLo, split[0], bLo, split[1]);
+            compare(split[0], aHi, split[1], bHi);
+        }
+    }
+
+    /** Return a point {x, y} through which a shortest edit script between
+     *  A[ALO, AHI) and B[BLO, BHI) passes, both being non-empty and
+     *  differing in their first and last lines. Paths of D edits are
+     *  extended from both corners at once, and the point is the end of
+     *  the furthest-reaching path of one that overlaps the other. Entry
+     *  K of FORWARD is the furthest x reached on diagonal x - y = K from
+     *  the start, and of BACKWARD the furthest distance back from the end
+     *  on diagonal K of the reversed texts. */
+    private int[] split(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = next(forward, offset, k, d);
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int back = delta - k;
+                if (odd && back >= -(d - 1) && back <= d - 1
+                        && x + backward[offset + back] >= n) {
+                    return new int[] {aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = next(backward, offset, k, d);
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int front = delta - k;
+                if (!odd && front >= -d && front <= d
+                        && x + forward[offset + front] >= n) {
+                    return new int[] {aHi - x, bHi - y};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Return the x at which a path of D edits on diagonal K starts: one
+     *  step down from diagonal K + 1 or right from diagonal K - 1,
+     *  whichever reaches further, as recorded in V. */
+    private static int next(int[] v, int offset, int k, int d) {
+        if (k == -d || k != d && v[offset + k - 1] < v[offset + k + 1]) {
+            return v[offset + k + 1];
+        }
+        return v[offset + k - 1] + 1;
+    }
+
+    /** Return the lines read from IN, each with its newline, or null if
+     *  the text holds a NUL character, and so is taken to be binary. */
+    static List<String> lines(InputStream in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Reader reader = new BufferedReader(new InputStreamReader(in,
+                StandardCharsets.ISO_8859_1), Pack.BUFFER_SIZE);
+        StringBuilder line = new StringBuilder();
+        char[] buf = new char[Pack.BUFFER_SIZE];
+        int n;
+        while ((n = reader.read(buf)) > 0) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\0') {
+                    return null;
+                } else if (buf[i] == '\n') {
+                    line.append(buf, start, i + 1 - start);
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
+            line.append(buf, start, n - start);
+        }
+        if (line.length() > 0) {
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /** Write to OUT the differences between lines A of the file AFILE and
+     *  lines B of BFILE as a unified diff, each change with CONTEXT lines
+     *  around it. A file that is absent is named /dev/null. */
+    static void unified(String aFile, List<String> a, String bFile, List<String> b,
+                        Writer out) throws IOException {
+        List<Edit> edits = diff(a, b);
+        if (edits.isEmpty()) {
+            return;
+        }
+        out.write("--- " + aFile + "\n");
+        out.write("+++ " + bFile + "\n");
+        int first = 0;
+        while (first < edits.size()) {
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).aStart - edits.get(last).aEnd <= 2 * CONTEXT) {
+                last++;
+            }
+            Edit start = edits.get(first);
+            Edit end = edits.get(last);
+            int aFrom = Math.max(0, start.aStart - CONTEXT);
+            int bFrom = start.bStart - (start.aStart - aFrom);
+            int aTo = Math.min(a.size(), end.aEnd + CONTEXT);
+            int bTo = end.bEnd + (aTo - end.aEnd);
+            out.write("@@ -" + range(aFrom, aTo) + " +" + range(bFrom, bTo) + " @@\n");
+            int i = aFrom;
+            for (int e = first; e <= last; e++) {
+                Edit edit = edits.get(e);
+                writeLines(out, ' ', a, i, edit.aStart);
+                writeLines(out, '-', a, edit.aStart, edit.aEnd);
+                writeLines(out, '+', b, edit.bStart, edit.bEnd);
+                i = edit.aEnd;
+            }
+            writeLines(out, ' ', a, i, aTo);
+            first = last + 1;
+        }
+    }
+
+    /** Return the range of lines [FROM, TO) as a hunk header shows it. */
+    private static String range(int from, int to) {
+        int length = to - from;
+        return (length == 0 ? from : from + 1) + "," + length;
+    }
+
+    private static void writeLines(Writer out, char prefix, List<String> lines,
+                                   int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            String line = lines.get(i);
+            out.write(prefix);
+            out.write(line);
+            if (!line.endsWith("\n")) {
+                out.write("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Write to OUT the merge of OURS and THEIRS, two texts changed from
+     *  BASE. A part of BASE changed on one side only takes that side's
+     *  lines; a part changed on both sides, in ways that overlap or touch
+     *  and are not the same, becomes a conflict showing both. Return true
+     *  if there was a conflict. */
+    static boolean merge(List<String> base, List<String> ours, List<String> theirs,
+                         Writer out) throws IOException {
+        List<Edit> oursEdits = diff(base, ours);
+        List<Edit> theirsEdits = diff(base, theirs);
+        boolean conflict = false;
+        int pos = 0;
+        int o = 0;
+        int t = 0;
+        int oursShift = 0;
+        int theirsShift = 0;
+        while (o < oursEdits.size() || t < theirsEdits.size()) {
+            int lo = Math.min(o < oursEdits.size() ? oursEdits.get(o).aStart : base.size(),
+                    t < theirsEdits.size() ? theirsEdits.get(t).aStart : base.size());
+            int hi = lo;
+            int oFirst = o;
+            int tFirst = t;
+            int oursDelta = 0;
+            int theirsDelta = 0;
+            while (true) {
+                if (o < oursEdits.size() && oursEdits.get(o).aStart <= hi) {
+                    Edit e = oursEdits.get(o++);
+                    hi = Math.max(hi, e.aEnd);
+                    oursDelta += (e.bEnd - e.bStart) - (e.aEnd - e.aStart);
+                } else if (t < theirsEdits.size() && theirsEdits.get(t).aStart <= hi) {
+                    Edit e = theirsEdits.get(t++);
+                    hi = Math.max(hi, e.aEnd);
+                    theirsDelta += (e.bEnd - e.bStart) - (e.aEnd - e.aStart);
+                } else {
+                    break;
+                }
+            }
+            writeLines(out, base, pos, lo);
+            List<String> oursPart = ours.subList(lo + oursShift, hi + oursShift + oursDelta);
+            List<String> theirsPart = theirs.subList(lo + theirsShift,
+                    hi + theirsShift + theirsDelta);
+            if (o == oFirst) {
+                writeLines(out, theirsPart, 0, theirsPart.size());
+            } else if (t == tFirst || oursPart.equals(theirsPart)) {
+                writeLines(out, oursPart, 0, oursPart.size());
+            } else {
+                conflict = true;
+                out.write(OURS);
+                writeLines(out, oursPart, 0, oursPart.size());
+                endLine(out, oursPart);
+                out.write(SEPARATOR);
+                writeLines(out, theirsPart, 0, theirsPart.size());
+                endLine(out, theirsPart);
+                out.write(THEIRS);
+            }
+            oursShift += oursDelta;
+            theirsShift += theirsDelta;
+            pos = hi;
+        }
+        writeLines(out, base, pos, base.size());
+        return conflict;
+    }
+
+    /** Write a whole-file conflict between the texts read from OURS and
+     *  THEIRS, either of which may be null for a missing file, to OUT. */
+    static void conflict(InputStream ours, InputStream theirs, Writer out)
+            throws IOException {
+        out.write(OURS);
+        copy(ours, out);
+        out.write(SEPARATOR);
+        copy(theirs, out);
+        out.write(THEIRS);
+    }
+
+    private static void copy(InputStream in, Writer out) throws IOException {
+        if (in != null) {
+            new InputStreamReader(in, StandardCharsets.ISO_8859_1).transferTo(out);
+        }
+    }
+
+    private static void writeLines(Writer out, List<String> lines, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i++) {
+            out.write(lines.get(i));
+        }
+    }
+
+    /** End the last of LINES, written as one side of a conflict, with a
+     *  newline if it has none, so that the next marker starts a line. */
+    private static void endLine(Writer out, List<String> lines) throws IOException {
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import static gitlet.Utils.*;
+
+/** Deletes the objects nothing refers to. Every object is numbered:
+ *  commits by their position in the commit graph, trees and blobs by
+ *  their place among the sorted IDs of their type. The objects reachable
+ *  from the branches, the head and the index are marked in one bitmap per
+ *  type, reading only commits and trees, each at most once, and never a
+ *  blob. Objects written within a grace period are marked too, with all
+ *  they reach, so that those a command still running has written but not
+ *  yet referred to, and those a user has just orphaned by mistake,
+ *  survive. Everything left unmarked is then deleted. In a partial clone,
+ *  the blobs it lacks, and those it has fetched, belong to its promisor
+ *  remote: they are neither numbered, marked nor deleted.
+ *  @author Saksham Agarwal
+ */
+class GarbageCollector {
+
+    /** Default grace period, in seconds: two weeks. */
+    static final long GRACE = 14 * 24 * 60 * 60;
+
+    private final ObjectDatabase objects = Repository.objects();
+    private final CommitGraph graph = CommitGraph.load();
+    /** The IDs of all trees and all blobs, in sorted order. */
+    private final String[] trees;
+    private final String[] blobs;
+    /** The marks of the commits, trees and blobs, by number. */
+    private final BitSet liveCommits = new BitSet();
+    private final BitSet liveTrees;
+    private final BitSet liveBlobs;
+    /** True in a partial clone, whose promisor remote holds the blobs it
+     *  lacks. */
+    private final boolean partial = Promisor.remote(Repository.GITLET_DIR) != null;
+
+    private GarbageCollector() {
+        trees = objects.treeIds().toArray(new String[0]);
+        blobs = objects.blobIds().toArray(new String[0]);
+        liveTrees = new BitSet(trees.length);
+        liveBlobs = new BitSet(blobs.length);
+    }
+
+    /** Delete the objects that cannot be reached from the branches, the
+     *  head or the index and were written more than GRACE seconds ago,
+     *  and return how many there were. */
+    static int collect(long grace) {
+        GarbageCollector gc = new GarbageCollector();
+        Refs refs = Refs.load();
+        gc.markCommit(refs.head());
+        for (String branch : refs.branches()) {
+            gc.markCommit(refs.branch(branch));
+        }
+        for (String blob : Index.load().files().values()) {
+            gc.markBlob(blob);
+        }
+        for (String tree : Index.load().trees()) {
+            gc.markTree(tree);
+        }
+        long cutoff = System.currentTimeMillis() - grace * 1000;
+        List<String> commits = gc.objects.commitIds();
+        for (String id : commits) {
+            if (!gc.isLive(id) && gc.objects.modified(id) >= cutoff) {
+                gc.markCommit(id);
+            }
+        }
+        for (String id : gc.trees) {
+            if (!gc.isLive(id) && gc.objects.modified(id) >= cutoff) {
+                gc.markTree(id);
+            }
+        }
+        for (String id : gc.blobs) {
+            if (!gc.isLive(id) && gc.objects.modified(id) >= cutoff) {
+                gc.markBlob(id);
+            }
+        }
+        int deadCommits = 0;
+        for (String id : commits) {
+            if (!gc.isLive(id)) {
+                deadCommits++;
+            }
+        }
+        int dead = deadCommits + gc.trees.length - gc.liveTrees.cardinality()
+                + gc.blobs.length - gc.liveBlobs.cardinality();
+        if (dead > 0) {
+            gc.objects.prune(gc::isLive);
+        }
+        if (deadCommits > 0) {
+            Repository.COMMIT_GRAPH.delete();
+            Repository.COMMIT_IDS.delete();
+            Repository.CATALOG.delete();
+            Repository.CATALOG_INDEX.delete();
+            Repository.BITMAPS.delete();
+            CommitGraph.reload();
+            Reachability.reload();
+        }
+        return dead;
+    }
+
+    /** Return true if object ID has been marked. */
+    private boolean isLive(String id) {
+        int pos = graph.find(id);
+        if (pos != CommitGraph.NONE && liveCommits.get(pos)) {
+            return true;
+        }
+        int tree = Arrays.binarySearch(trees, id);
+        if (tree >= 0 && liveTrees.get(tree)) {
+            return true;
+        }
+        int blob = Arrays.binarySearch(blobs, id);
+        return blob >= 0 && liveBlobs.get(blob);
+    }
+
+    /** Mark commit ID, its ancestors and their trees. The ancestors are
+     *  found through the commit graph; a commit is read only for its
+     *  tree. */
+    private void markCommit(String id) {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(graph.position(id));
+        while (!pending.isEmpty()) {
+            int pos = pending.pop();
+            if (liveCommits.get(pos)) {
+                continue;
+            }
+            liveCommits.set(pos);
+            markTree(objects.readCommit(graph.id(pos)).getTreeID());
+            for (int which = 0; which < 2; which++) {
+                int parent = graph.parent(pos, which);
+                if (parent != CommitGraph.NONE) {
+                    pending.push(parent);
+                }
+            }
+        }
+    }
+
+    /** Mark tree ID and the trees and blobs under it. A tree already
+     *  marked is not read again, so a directory shared by many commits is
+     *  read once. */
+    private void markTree(String id) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String next = pending.pop();
+            int num = number(trees, next);
+            if (liveTrees.get(num)) {
+                continue;
+            }
+            liveTrees.set(num);
+            Tree tree = objects.readTree(next);
+            for (Map.Entry<String, String> entry : tree.entries().entrySet()) {
+                if (tree.isTree(entry.getKey())) {
+                    pending.push(entry.getValue());
+                } else {
+                    markBlob(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /** Mark blob ID, unless this is a partial clone that lacks it. */
+    private void markBlob(String id) {
+        if (partial && Arrays.binarySearch(blobs, id) < 0) {
+            return;
+        }
+        liveBlobs.set(number(blobs, id));
+    }
+
+    /** Return the number of object ID among IDS, failing if it is missing,
+     *  since then the repository is damaged and nothing may be deleted. */
+    private static int number(String[] ids, String id) {
+        int num = Arrays.binarySearch(ids, id);
+        if (num < 0) {
+            throw error("Missing object %s.", id);
+        }
+        return num;
+    }
+}
@@ -0,0 +1,475 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import static gitlet.Utils.*;
+
+/** A Gitlet repository, for use by other Java code in the same process.
+ *  Each operation does what the command of the same name does, but
+ *  returns what the command would print and, when it cannot be carried
+ *  out, throws a GitletException whose message is what the command would
+ *  print instead.
+ *
+ *  The repository operated on is held by Repository and the classes it
+ *  uses, so the operations of all Gitlets run one at a time, each first
+ *  pointing Repository at its own directory. Those that change the
+ *  repository hold its index and references locks while they run, as the
+ *  commands do, and none runs on what was read of the repository before
+ *  another process changed it. Operations run as a batch
+ *  keep the index, the branches and the commits they make in memory, and
+ *  write them once when the batch ends.
+ *  @author Saksham Agarwal
+ */
+public class Gitlet {
+
+    /** The working directory of the repository. */
+    private final File dir;
+
+    private Gitlet(File dir) {
+        this.dir = dir.getAbsoluteFile();
+    }
+
+    /** Create a repository in the existing directory DIR and return it. */
+    public static Gitlet init(File dir) {
+        Gitlet gitlet = new Gitlet(dir);
+        gitlet.run(Repository::initMethod);
+        return gitlet;
+    }
+
+    /** Make the existing directory DIR a partial clone of the repository
+     *  whose gitlet directory is at PATH, and return it. */
+    public static Gitlet cloneFrom(File dir, String path) {
+        Gitlet gitlet = new Gitlet(dir);
+        gitlet.run(() -> Repository.cloneFrom(path));
+        return gitlet;
+    }
+
+    /** Return the repository whose working directory is DIR. */
+    public static Gitlet open(File dir) {
+        Gitlet gitlet = new Gitlet(dir);
+        gitlet.run(Repository::gitletDirCheck);
+        return gitlet;
+    }
+
+    /** Return the working directory of this repository. */
+    public File directory() {
+        return dir;
+    }
+
+    /** Stage the files or directories PATHS, relative to the working
+     *  directory. */
+    public void add(String... paths) {
+        runLocked(() -> Repository.add(paths));
+    }
+
+    public void rm(String path) {
+        runLocked(() -> Repository.rm(path));
+    }
+
+    /** Commit the staged files with MESSAGE and return the new commit. */
+    public CommitInfo commit(String message) {
+        return callLocked(() -> CommitInfo.of(Repository.objects().readCommit(
+                Repository.commit(message))));
+    }
+
+    /** Return the commits from the head back along first parents. */
+    public List<CommitInfo> log() {
+        return call(() -> {
+            List<CommitInfo> log = new ArrayList<>();
+            Repository.history(c -> log.add(CommitInfo.of(c)));
+            return log;
+        });
+    }
+
+    /** Return every commit ever made. */
+    public List<CommitInfo> globalLog() {
+        return call(() -> {
+            List<CommitInfo> log = new ArrayList<>();
+            Repository.forEachCommit(r -> log.add(CommitInfo.of(r)));
+            return log;
+        });
+    }
+
+    /** Return the IDs of the commits whose message is MESSAGE or, if
+     *  SUBSTRING, contains it. */
+    public List<String> find(String message, boolean substring) {
+        return call(() -> Repository.findCommits(message, substring));
+    }
+
+    public Status status() {
+        return call(Repository::currentStatus);
+    }
+
+    /** Return the ID of the head commit. */
+    public String head() {
+        return call(() -> Refs.load().head());
+    }
+
+    public String currentBranch() {
+        return call(() -> Refs.load().currentBranch());
+    }
+
+    public List<String> branches() {
+        return call(() -> Refs.load().branches());
+    }
+
+    /** Write to OUT the differences between the staged files and their
+     *  working files, or, given one commit, between its files and the
+     *  working files, or, given two, between their files, as unified
+     *  diffs. A commit is named by a branch or by its ID or a prefix of
+     *  it. */
+    public void diff(OutputStream out, String... commits) {
+        run(() -> Repository.diff(out, commits));
+    }
+
+    /** Check out branch BRANCH and return the changes made to the working
+     *  directory. */
+    public Update checkout(String branch) {
+        return callLocked(() -> Repository.checkoutBranch(branch));
+    }
+
+    /** Check out FILE from the head commit. */
+    public void checkoutFile(String file) {
+        runLocked(() -> Repository.checkOut(file));
+    }
+
+    /** Check out FILE from the commit whose ID is or starts with
+     *  COMMITID. */
+    public void checkoutFile(String commitId, String file) {
+        runLocked(() -> Repository.checkout(commitId, file));
+    }
+
+    public void branch(String name) {
+        runLocked(() -> Repository.branch(name));
+    }
+
+    public void rmBranch(String name) {
+        runLocked(() -> Repository.rmBranch(name));
+    }
+
+    /** Reset the current branch to the commit whose ID is or starts with
+     *  COMMITID and return the changes made to the working directory. */
+    public Update reset(String commitId) {
+        return callLocked(() -> Repository.resetTo(commitId));
+    }
+
+    public MergeResult merge(String branch) {
+        return callLocked(() -> Repository.mergeBranch(branch));
+    }
+
+    /** Name the repository whose gitlet directory is at PATH remote
+     *  NAME. */
+    public void addRemote(String name, String path) {
+        runLocked(() -> Repository.addRemote(name, path));
+    }
+
+    public void rmRemote(String name) {
+        runLocked(() -> Repository.rmRemote(name));
+    }
+
+    /** Bring branch BRANCH of remote REMOTE and the history this
+     *  repository lacks into it, as branch REMOTE/BRANCH. */
+    public void fetch(String remote, String branch) {
+        runLocked(() -> Repository.fetch(remote, branch));
+    }
+
+    /** Fetch branch BRANCH of remote REMOTE and merge it into the current
+     *  branch. */
+    public MergeResult pull(String remote, String branch) {
+        return callLocked(() -> {
+            Repository.fetch(remote, branch);
+            return Repository.mergeBranch(remote + "/" + branch);
+        });
+    }
+
+    /** Send the head commit and the history remote REMOTE lacks to it, as
+     *  the tip of its branch BRANCH, which must not be its current
+     *  branch. */
+    public void push(String remote, String branch) {
+        runLocked(() -> Repository.push(remote, branch));
+    }
+
+    /** Return true if the commit named ANCESTOR is the commit named
+     *  COMMIT or one of its ancestors. Each is named by a branch or by its
+     *  ID or a prefix of it. */
+    public boolean isAncestor(String ancestor, String commit) {
+        return call(() -> Repository.isAncestor(Repository.commitNamed(ancestor),
+                Repository.commitNamed(commit)));
+    }
+
+    /** Return the numbers of commits that the commit named A has and the
+     *  commit named B lacks, and that B has and A lacks. */
+    public int[] aheadBehind(String a, String b) {
+        return call(() -> Repository.countAheadBehind(a, b));
+    }
+
+    /** Delete the objects that cannot be reached from the branches, the
+     *  head or the index and were written more than GRACE seconds ago,
+     *  and return how many there were. */
+    public int gc(long grace) {
+        return callLocked(() -> GarbageCollector.collect(grace));
+    }
+
+    /** Run OPERATIONS, which use this repository, as one batch. The index,
+     *  the branches and the commits made are written once, after the last
+     *  operation, rather than after each. If OPERATIONS throws, the batch
+     *  is abandoned and the exception rethrown: the index and branches are
+     *  left as they were before it, though the working files it changed
+     *  stay changed. A batch run during another is part of it. */
+    public void batch(Consumer<Gitlet> operations) {
+        runLocked(() -> {
+            if (Repository.batching()) {
+                operations.accept(this);
+                return;
+            }
+            Repository.beginBatch();
+            try {
+                operations.accept(this);
+            } catch (RuntimeException | Error excp) {
+                Repository.abortBatch();
+                throw excp;
+            }
+            Repository.endBatch();
+        });
+    }
+
+    /** Point Repository at this repository, unless it already is, and
+     *  have it forget what it read if another process has changed the
+     *  repository since. */
+    private void use() {
+        if (!dir.equals(Repository.CWD)) {
+            if (Repository.batching()) {
+                throw error("Cannot use another repository during a batch.");
+            }
+            Repository.setDirectory(dir);
+        }
+        Repository.refresh();
+    }
+
+    private void run(Runnable operation) {
+        synchronized (Repository.class) {
+            use();
+            operation.run();
+        }
+    }
+
+    private <T> T call(Supplier<T> operation) {
+        synchronized (Repository.class) {
+            use();
+            return operation.get();
+        }
+    }
+
+    /** Run OPERATION, which changes the repository, holding the index and
+     *  references locks, so that no other process changes it meanwhile.
+     *  What was read before the locks were taken is checked again under
+     *  them. */
+    private void runLocked(Runnable operation) {
+        callLocked(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <T> T callLocked(Supplier<T> operation) {
+        synchronized (Repository.class) {
+            use();
+            try (Lock index = Lock.acquire(Repository.INDEX_LOCK);
+                 Lock refs = Lock.acquire(Repository.REFS_LOCK)) {
+                Repository.refresh();
+                T result = operation.get();
+                Repository.settle();
+                return result;
+            }
+        }
+    }
+
+    /** A commit, as log shows it. */
+    public static class CommitInfo {
+        private final String id;
+        private final List<String> parents;
+        private final long time;
+        private final String date;
+        private final String message;
+
+        CommitInfo(String id, String parent, String parent2, long time,
+                   String date, String message) {
+            this.id = id;
+            List<String> p = new ArrayList<>();
+            for (String parentID : new String[] {parent, parent2}) {
+                if (parentID != null) {
+                    p.add(parentID);
+                }
+            }
+            this.parents = Collections.unmodifiableList(p);
+            this.time = time;
+            this.date = date;
+            this.message = message;
+        }
+
+        static CommitInfo of(Commit c) {
+            return new CommitInfo(c.id(), c.getParentID(), c.get2ndparent(),
+                    c.getTime(), c.getDate(), c.getMessage());
+        }
+
+        static CommitInfo of(CommitCatalog.Record r) {
+            return new CommitInfo(r.id(), r.parent(), r.parent2(), r.time(),
+                    r.date(), r.message());
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /** Return the IDs of the parents: none for the initial commit, two
+         *  for a merge. */
+        public List<String> parents() {
+            return parents;
+        }
+
+        /** Return the time of the commit in milliseconds since the
+         *  epoch. */
+        public long time() {
+            return time;
+        }
+
+        public String date() {
+            return date;
+        }
+
+        public String message() {
+            return message;
+        }
+    }
+
+    /** The state of the repository, as status shows it. Each list is in
+     *  order of path or name. */
+    public static class Status {
+        private final List<String> branches;
+        private final String currentBranch;
+        private final List<String> staged;
+        private final List<String> removed;
+        private final List<String> modified;
+        private final List<String> deleted;
+        private final List<String> untracked;
+
+        Status(List<String> branches, String currentBranch, List<String> staged,
+               List<String> removed, List<String> modified, List<String> deleted,
+               List<String> untracked) {
+            this.branches = Collections.unmodifiableList(branches);
+            this.currentBranch = currentBranch;
+            this.staged = Collections.unmodifiableList(staged);
+            this.removed = Collections.unmodifiableList(removed);
+            this.modified = Collections.unmodifiableList(modified);
+            this.deleted = Collections.unmodifiableList(deleted);
+            this.untracked = Collections.unmodifiableList(untracked);
+        }
+
+        public List<String> branches() {
+            return branches;
+        }
+
+        public String currentBranch() {
+            return currentBranch;
+        }
+
+        /** Return the files staged for addition. */
+        public List<String> staged() {
+            return staged;
+        }
+
+        /** Return the files staged for removal. */
+        public List<String> removed() {
+            return removed;
+        }
+
+        /** Return the staged files changed since they were staged. */
+        public List<String> modified() {
+            return modified;
+        }
+
+        /** Return the staged files deleted since they were staged. */
+        public List<String> deleted() {
+            return deleted;
+        }
+
+        /** Return the files in the working directory, outside
+         *  subdirectories, that are neither staged nor tracked. */
+        public List<String> untracked() {
+            return untracked;
+        }
+    }
+
+    /** The changes made to the working directory by a checkout or reset. */
+    public static class Update {
+        private final int written;
+        private final int deleted;
+        private final int unchanged;
+
+        Update(int written, int deleted, int unchanged) {
+            this.written = written;
+            this.deleted = deleted;
+            this.unchanged = unchanged;
+        }
+
+        public int written() {
+            return written;
+        }
+
+        public int deleted() {
+            return deleted;
+        }
+
+        /** Return the number of files already as they were to be. */
+        public int unchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d written, %d deleted, %d unchanged.",
+                    written, deleted, unchanged);
+        }
+    }
+
+    /** The outcome of a merge. */
+    public static class MergeResult {
+        private final String commit;
+        private final boolean conflict;
+        private final Update fastForward;
+
+        MergeResult(String commit, boolean conflict, Update fastForward) {
+            this.commit = commit;
+            this.conflict = conflict;
+            this.fastForward = fastForward;
+        }
+
+        /** Return the ID of the new head commit: the merge commit, or the
+         *  given branch's commit if the merge was a fast-forward. */
+        public String commit() {
+            return commit;
+        }
+
+        /** Return true if some files were left with conflict markers. */
+        public boolean conflict() {
+            return conflict;
+        }
+
+        /** Return true if the given branch was checked out rather than
+         *  merged, since the head was its ancestor. */
+        public boolean fastForwarded() {
+            return fastForward != null;
+        }
+
+        /** Return the changes made by the checkout of a fast-forward, or
+         *  null if there was none. */
+        public Update update() {
+            return fastForward;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/** A walk back through history from a commit, yielding the positions in
+ *  the commit graph of the commit and its ancestors one at a time, as they
+ *  are asked for, so that a walk stopped early reads no more of the graph
+ *  than it has yielded. Only the graph is read, never a commit object.
+ *  The walk follows first parents only, or, in date and topological
+ *  order, both parents of a merge, yielding each commit once.
+ *
+ *  A walk may start from several commits, and may be told that some
+ *  commits are hidden, before it starts or as it goes: those and all
+ *  their ancestors are then not yielded, and the walk ends as soon as
+ *  every commit it has reached and not yielded is hidden. In topological
+ *  order every descendant of a commit within the walk is taken before it,
+ *  so no ancestor of a hidden commit is ever yielded; in the other orders
+ *  one may be, if the times of the commits are out of order.
+ *  @author Saksham Agarwal
+ */
+class History implements Iterator<Integer> {
+
+    /** The orders of a walk. */
+    enum Order {
+        /** The commit, its first parent, that commit's first parent, and
+         *  so on back to the initial commit. */
+        FIRST_PARENT,
+        /** Every ancestor, latest commit time first. */
+        DATE,
+        /** Every ancestor, none before any of its descendants: highest
+         *  generation first, and latest time first among equals. */
+        TOPO
+    }
+
+    private final CommitGraph graph;
+    private final Order order;
+    /** The commits reached and not yet yielded, the next first. */
+    private final PriorityQueue<Integer> pending;
+    /** The commits reached so far, those taken from PENDING, and those
+     *  hidden. */
+    private final BitSet reached = new BitSet();
+    private final BitSet taken = new BitSet();
+    private final BitSet hidden = new BitSet();
+    /** Number of commits in PENDING that are not hidden. */
+    private int shown;
+    /** The commit to be yielded next, once found, or NONE. */
+    private int ready = CommitGraph.NONE;
+
+    /** A walk in ORDER from the commit at position START of GRAPH. */
+    History(CommitGraph graph, int start, Order order) {
+        this(graph, List.of(start), List.of(), order);
+    }
+
+    /** A walk in ORDER from the commits at positions STARTS of GRAPH,
+     *  yielding none of the commits at positions HIDDEN or their
+     *  ancestors. */
+    History(CommitGraph graph, List<Integer> starts, List<Integer> hidden, Order order) {
+        this.graph = graph;
+        this.order = order;
+        Comparator<Integer> byTime = Comparator.comparingLong(graph::time);
+        if (order == Order.TOPO) {
+            pending = new PriorityQueue<>(Comparator.comparingInt(graph::generation)
+                    .thenComparing(byTime).reversed());
+        } else {
+            pending = new PriorityQueue<>(byTime.reversed());
+        }
+        for (int pos : hidden) {
+            hide(pos);
+        }
+        for (int pos : starts) {
+            reach(pos);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (ready == CommitGraph.NONE && shown > 0) {
+            int pos = pending.poll();
+            taken.set(pos);
+            for (int which = 0; which < 2; which++) {
+                int parent = graph.parent(pos, which);
+                if (hidden.get(pos)) {
+                    hide(parent);
+                } else if (which == 0 || order != Order.FIRST_PARENT) {
+                    reach(parent);
+                }
+            }
+            if (!hidden.get(pos)) {
+                shown--;
+                ready = pos;
+            }
+        }
+        return ready != CommitGraph.NONE;
+    }
+
+    @Override
+    public Integer next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int pos = ready;
+        ready = CommitGraph.NONE;
+        return pos;
+    }
+
+    /** Hide the commit at POS and its ancestors from the rest of the
+     *  walk. Those already taken pass it on to their parents at once; the
+     *  others do when they are taken. */
+    void hide(int pos) {
+        Deque<Integer> hiding = new ArrayDeque<>();
+        hiding.push(pos);
+        while (!hiding.isEmpty()) {
+            int next = hiding.pop();
+            if (next == CommitGraph.NONE || hidden.get(next)) {
+                continue;
+            }
+            hidden.set(next);
+            if (next == ready) {
+                ready = CommitGraph.NONE;
+            }
+            if (!reached.get(next)) {
+                reached.set(next);
+                pending.add(next);
+            } else if (!taken.get(next)) {
+                shown--;
+            } else {
+                hiding.push(graph.parent(next, 0));
+                hiding.push(graph.parent(next, 1));
+            }
+        }
+    }
+
+    private void reach(int pos) {
+        if (pos != CommitGraph.NONE && !reached.get(pos)) {
+            reached.set(pos);
+            pending.add(pos);
+            shown++;
+        }
+    }
+}
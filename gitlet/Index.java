@@ -0,0 +1,372 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import static gitlet.Utils.*;
+
+/** The staging area: the files of the next commit, each with the blob of
+ *  its staged contents and the size, modification time and inode its
+ *  working file had when that blob was computed. A working file whose
+ *  stat still matches its entry is known to hold the entry's blob without
+ *  being read again. Files staged for addition are those whose blob
+ *  differs from the head commit's; files staged for removal are those of
+ *  the head commit missing from the index.
+ *
+ *  The index also caches the IDs of the trees of the staged files, by
+ *  directory, as last written for a commit. Staging or unstaging a path
+ *  drops the trees of the directories containing it, so that the next
+ *  commit builds and hashes only those trees again.
+ *
+ *  The index is kept in the single file Repository.INDEX: the magic
+ *  "GLIX", a version and the entry count, then each entry's path, size,
+ *  modification time in nanoseconds, inode and 20-byte blob ID, then the
+ *  number of cached trees and each one's directory and 20-byte tree ID.
+ *  Indexes of version 1 have no cached trees.
+ *  @author Saksham Agarwal
+ */
+class Index {
+
+    private static final int MAGIC = 0x474c4958;
+    private static final int VERSION = 2;
+    /** Stat value of an entry whose working file has never been seen. */
+    private static final long UNKNOWN = -1;
+
+    /** The index of the repository, once loaded. */
+    private static Index loaded;
+
+    /** The entries of the index, by path. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** The IDs of the stored trees of the staged files, by the path of
+     *  their directory, "" for the root. */
+    private final TreeMap<String, String> trees = new TreeMap<>();
+    /** Modification time of the index file when it was read. Entries
+     *  whose files changed no earlier than that are racily clean: the file
+     *  may have changed again within the timer's resolution, so they are
+     *  always rehashed. */
+    private long timestamp = Long.MIN_VALUE;
+    /** Stat of the index file read or last written, or null if there was
+     *  none. */
+    private long[] file;
+    /** True if the entries changed since the index was read. */
+    private boolean dirty;
+
+    /** The staged blob and last seen stat of one path. */
+    private static class Entry {
+        private final String blob;
+        private long size;
+        private long mtime;
+        private long ino;
+
+        Entry(String blob, long[] stat) {
+            this.blob = blob;
+            setStat(stat);
+        }
+
+        void setStat(long[] stat) {
+            size = stat == null ? UNKNOWN : stat[0];
+            mtime = stat == null ? UNKNOWN : stat[1];
+            ino = stat == null ? UNKNOWN : stat[2];
+        }
+
+        boolean matches(long[] stat) {
+            return size == stat[0] && mtime == stat[1] && ino == stat[2];
+        }
+    }
+
+    /** Return the index of the repository, reading it on first use. */
+    static Index load() {
+        if (loaded == null) {
+            loaded = new Index();
+            try (Profile.Timer timer = Profile.time(Profile.Phase.INDEX)) {
+                loaded.read();
+            }
+        }
+        return loaded;
+    }
+
+    /** Forget the index read so far, so that it is read again on next use. */
+    static void reload() {
+        loaded = null;
+    }
+
+    private void read() {
+        file = statOf(Repository.INDEX);
+        if (file == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(Repository.INDEX), Pack.BUFFER_SIZE))) {
+            int version = in.readInt() != MAGIC ? 0 : in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw error("Corrupt index.");
+            }
+            int count = in.readInt();
+            byte[] blob = new byte[20];
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long[] stat = {in.readLong(), in.readLong(), in.readLong()};
+                in.readFully(blob);
+                entries.put(path, new Entry(Pack.toHex(blob), stat));
+            }
+            int treeCount = version < 2 ? 0 : in.readInt();
+            for (int i = 0; i < treeCount; i++) {
+                String dir = in.readUTF();
+                in.readFully(blob);
+                trees.put(dir, Pack.toHex(blob));
+            }
+            timestamp = Files.getLastModifiedTime(Repository.INDEX.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            throw error("Cannot read index.");
+        }
+    }
+
+    /** Write the index back to Repository.INDEX if it changed, unless a
+     *  batch of operations is running. The new index replaces the old one
+     *  with an atomic rename. */
+    void save() {
+        if (!dirty || Repository.batching()) {
+            return;
+        }
+        try (Profile.Timer timer = Profile.time(Profile.Phase.INDEX)) {
+            write();
+        }
+        dirty = false;
+    }
+
+    private void write() {
+        File tmp = Repository.tempFile("index");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), Pack.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.ino);
+                out.write(Pack.toBytes(entry.blob));
+            }
+            out.writeInt(trees.size());
+            for (Map.Entry<String, String> tree : trees.entrySet()) {
+                out.writeUTF(tree.getKey());
+                out.write(Pack.toBytes(tree.getValue()));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write index.");
+        }
+        try {
+            Files.move(tmp.toPath(), Repository.INDEX.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            file = statOf(Repository.INDEX);
+            timestamp = file[1];
+        } catch (IOException excp) {
+            throw error("Cannot write index.");
+        }
+    }
+
+    /** Write back the stats refreshed by a command that changes nothing,
+     *  as status and diff do, and so runs without the index lock. The
+     *  index is written only if that lock is free and the index file is
+     *  still the one read, so that an index written meanwhile by another
+     *  process is never replaced by this older one. Otherwise the stats
+     *  are dropped, to be refreshed again by a later command. */
+    void saveRefreshed() {
+        if (!dirty || Repository.batching()) {
+            return;
+        }
+        try (Lock lock = Lock.tryAcquire(Repository.INDEX_LOCK)) {
+            if (lock != null && Arrays.equals(statOf(Repository.INDEX), file)) {
+                save();
+            }
+        }
+    }
+
+    /** Return the staged blob of every path, by path. */
+    TreeMap<String, String> files() {
+        TreeMap<String, String> files = new TreeMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            files.put(e.getKey(), e.getValue().blob);
+        }
+        return files;
+    }
+
+    /** Store the trees of the staged files and return the ID of the root
+     *  tree. Only the trees of directories that changed since the trees
+     *  were last written are built and stored. */
+    String writeTree() {
+        int cached = trees.size();
+        String id = Tree.write(files(), "", trees);
+        if (trees.size() != cached) {
+            dirty = true;
+        }
+        return id;
+    }
+
+    /** Return the cached IDs of the trees of the staged files. */
+    Collection<String> trees() {
+        return trees.values();
+    }
+
+    /** Return the staged blob of PATH, or null if PATH is not staged. */
+    String blob(String path) {
+        Entry entry = entries.get(path);
+        return entry == null ? null : entry.blob;
+    }
+
+    boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    /** Stage the current contents of the working files PATHS. A file is
+     *  stored as a blob unless its stat shows it is unchanged since it was
+     *  last staged. The files are stat'ed, hashed and stored in parallel on
+     *  the common fork-join pool, and the index is updated once they all
+     *  are. */
+    void addAll(List<String> paths) {
+        ObjectDatabase objects = Repository.objects();
+        Map<String, Entry> added = paths.parallelStream().distinct()
+                .map(path -> {
+                    File file = join(Repository.CWD, path);
+                    long[] stat = stat(file);
+                    Entry entry = entries.get(path);
+                    if (entry != null && isClean(entry, stat)) {
+                        return null;
+                    }
+                    return Map.entry(path, new Entry(objects.writeBlob(file), stat));
+                })
+                .filter(Objects::nonNull)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (!added.isEmpty()) {
+            for (Map.Entry<String, Entry> e : added.entrySet()) {
+                stage(e.getKey(), e.getValue());
+            }
+            dirty = true;
+        }
+    }
+
+    /** Stage BLOB as the contents of PATH without looking at its working
+     *  file. */
+    void put(String path, String blob) {
+        stage(path, new Entry(blob, null));
+        dirty = true;
+    }
+
+    /** Stage BLOB as the contents of PATH, whose working file has just been
+     *  written with those contents. */
+    void putWritten(String path, String blob) {
+        stage(path, new Entry(blob, stat(join(Repository.CWD, path))));
+        dirty = true;
+    }
+
+    /** Unstage PATH. */
+    void remove(String path) {
+        if (entries.remove(path) != null) {
+            invalidate(path);
+            dirty = true;
+        }
+    }
+
+    /** Make ENTRY that of PATH, dropping the trees containing PATH unless
+     *  its blob is unchanged. */
+    private void stage(String path, Entry entry) {
+        Entry old = entries.put(path, entry);
+        if (old == null || !old.blob.equals(entry.blob)) {
+            invalidate(path);
+        }
+    }
+
+    /** Drop the cached trees of the directories containing PATH. */
+    private void invalidate(String path) {
+        if (trees.isEmpty()) {
+            return;
+        }
+        trees.remove("");
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            trees.remove(path.substring(0, slash));
+        }
+    }
+
+    /** Replace the whole index by FILES, a map from path to blob, whose
+     *  working files have just been written. */
+    void reset(Map<String, String> files) {
+        entries.clear();
+        trees.clear();
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            putWritten(e.getKey(), e.getValue());
+        }
+        dirty = true;
+    }
+
+    /** Return the blob ID of the current contents of staged working file
+     *  PATH, or null if the file is missing. Only a file whose stat differs
+     *  from its entry is read and hashed; one found unchanged has its entry
+     *  refreshed so that it is not hashed again. */
+    String workingBlob(String path) {
+        File file = join(Repository.CWD, path);
+        long[] stat = stat(file);
+        if (stat == null) {
+            return null;
+        }
+        Entry entry = entries.get(path);
+        if (isClean(entry, stat)) {
+            return entry.blob;
+        }
+        String blob = ObjectStore.hash(file);
+        if (blob.equals(entry.blob)) {
+            entry.setStat(stat);
+            dirty = true;
+        }
+        return blob;
+    }
+
+    private boolean isClean(Entry entry, long[] stat) {
+        return stat != null && entry.matches(stat) && entry.mtime < timestamp;
+    }
+
+    /** Return the size, modification time in nanoseconds and inode of
+     *  FILE, or null if it does not exist. The inode is taken from the hash
+     *  of the platform's file key, which on Unix combines the device and
+     *  inode numbers, and is 0 where there is no file key. */
+    static long[] stat(File file) {
+        Profile.count(Profile.Counter.FILES_STATED, 1);
+        return statOf(file);
+    }
+
+    /** Return the stat of FILE as stat does, without counting it among the
+     *  working files stat'd, as for the index file itself. */
+    private static long[] statOf(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            Object key = attrs.fileKey();
+            return new long[] {attrs.size(),
+                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                key == null ? 0 : key.hashCode()};
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("Cannot stat %s.", file.getName());
+        }
+    }
+}
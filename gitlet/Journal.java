@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import static gitlet.Utils.*;
+
+/** The write-ahead journal of the repository, Repository.JOURNAL, through
+ *  which the references are changed all together or not at all.
+ *
+ *  The files of the objects written by a command are not forced to disk
+ *  one by one as they are written, but noted, and forced together when
+ *  the command changes the references, so that no reference can survive
+ *  a crash pointing at an object that did not. The new contents of every
+ *  reference changed are then written to the journal, which is forced in
+ *  turn, and only then is each reference replaced, by renaming a new
+ *  file over it. Finally the journal is deleted.
+ *
+ *  While they are replaced, the sequence number in
+ *  Repository.REFS_SEQUENCE is odd, so that readers, which take no lock,
+ *  can tell to wait and read them again.
+ *
+ *  A journal found when the references are next read, with no process
+ *  holding the references lock, was left by a crash. If it is complete,
+ *  the crash may have come while the references were being replaced, and
+ *  they are replaced again from it; if not, they were not yet touched,
+ *  and it is discarded.
+ *
+ *  The journal is the magic "GLJN", the number of references changed and,
+ *  for each, its path within the gitlet directory, whether it is kept,
+ *  and if so its new contents, followed by a CRC-32 of all before it.
+ *  @author Saksham Agarwal
+ */
+class Journal {
+
+    private static final int MAGIC = 0x474c4a4e;
+
+    /** The object files written since the references last changed. Blobs
+     *  are written by many threads at once, as add does, so the set is a
+     *  concurrent one. */
+    private static final Set<File> written = ConcurrentHashMap.newKeySet();
+
+    /** Note that FILE, an object or pack, has been written, to be forced to
+     *  disk before the references next change. */
+    static void written(File file) {
+        written.add(file);
+    }
+
+    /** Force the files written since the references last changed, and
+     *  the directories holding them, to disk. */
+    static void sync() {
+        try (Profile.Timer timer = Profile.time(Profile.Phase.SYNC)) {
+            syncWritten();
+        }
+    }
+
+    private static void syncWritten() {
+        Set<File> dirs = new LinkedHashSet<>();
+        for (Iterator<File> files = written.iterator(); files.hasNext();) {
+            File file = files.next();
+            files.remove();
+            if (file.isFile()) {
+                force(file);
+                dirs.add(file.getParentFile());
+            }
+        }
+        for (File dir : dirs) {
+            force(dir);
+        }
+    }
+
+    /** Replace the references UPDATES names, by path within the gitlet
+     *  directory, with their new contents, deleting those mapped to null,
+     *  all at once. */
+    static void commit(Map<String, String> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        sync();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(updates.size());
+            for (Map.Entry<String, String> update : updates.entrySet()) {
+                out.writeUTF(update.getKey());
+                out.writeBoolean(update.getValue() != null);
+                if (update.getValue() != null) {
+                    out.writeUTF(update.getValue());
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+        } catch (IOException excp) {
+            throw error("Cannot write journal.");
+        }
+        try (Profile.Timer timer = Profile.time(Profile.Phase.SYNC);
+             FileOutputStream out = new FileOutputStream(Repository.JOURNAL)) {
+            out.write(bytes.toByteArray());
+            out.getChannel().force(true);
+        } catch (IOException excp) {
+            throw error("Cannot write journal.");
+        }
+        apply(updates);
+        Repository.JOURNAL.delete();
+    }
+
+    /** Return the sequence number of the references: even while they are
+     *  as some change left them, odd while one is replacing them. */
+    static long sequence() {
+        try {
+            return Long.parseLong(Files.readString(Repository.REFS_SEQUENCE.toPath()));
+        } catch (NoSuchFileException excp) {
+            return 0;
+        } catch (IOException | NumberFormatException excp) {
+            throw error("Cannot read %s.", Repository.REFS_SEQUENCE.getName());
+        }
+    }
+
+    private static void setSequence(long sequence) {
+        replace(Repository.REFS_SEQUENCE, Long.toString(sequence));
+    }
+
+    /** Finish or discard the changes to the references left in the journal
+     *  by a crash, if any. The caller holds the references lock. */
+    static void recover() {
+        if (Repository.JOURNAL.isFile()) {
+            Map<String, String> updates = read();
+            if (updates != null) {
+                apply(updates);
+            }
+            Repository.JOURNAL.delete();
+        }
+        if (sequence() % 2 != 0) {
+            setSequence(sequence() + 1);
+        }
+    }
+
+    /** Return the changes recorded in the journal, or null if it is
+     *  incomplete. */
+    private static Map<String, String> read() {
+        Map<String, String> updates = new LinkedHashMap<>();
+        try {
+            byte[] contents = Files.readAllBytes(Repository.JOURNAL.toPath());
+            if (contents.length < Long.BYTES) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(contents, 0, contents.length - Long.BYTES);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents));
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String path = in.readUTF();
+                updates.put(path, in.readBoolean() ? in.readUTF() : null);
+            }
+            if (in.available() != Long.BYTES || in.readLong() != crc.getValue()) {
+                return null;
+            }
+        } catch (EOFException | UTFDataFormatException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("Cannot read journal.");
+        }
+        return updates;
+    }
+
+    /** Replace each reference of UPDATES by renaming a new file over it, or
+     *  delete it, with the sequence number odd meanwhile. */
+    private static void apply(Map<String, String> updates) {
+        long sequence = sequence() | 1;
+        setSequence(sequence);
+        for (Map.Entry<String, String> update : updates.entrySet()) {
+            File ref = join(Repository.GITLET_DIR, update.getKey());
+            if (update.getValue() == null) {
+                ref.delete();
+            } else {
+                ref.getParentFile().mkdirs();
+                replace(ref, update.getValue());
+            }
+        }
+        setSequence(sequence + 1);
+    }
+
+    /** Replace FILE with one holding CONTENTS, by renaming. */
+    private static void replace(File file, String contents) {
+        File tmp = join(Repository.GITLET_DIR, "ref.tmp");
+        writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write %s.", file.getName());
+        }
+    }
+
+    /** Force FILE, a file or directory, to disk. Directories cannot be
+     *  forced on some systems, where their entries are durable anyway. */
+    private static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw error("Cannot write %s.", file.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import static gitlet.Utils.*;
+
+/** A lock that serializes the processes changing part of a repository:
+ *  Repository.INDEX_LOCK for the index and Repository.REFS_LOCK for the
+ *  references. A process holding one is the only one that may change
+ *  what it guards, and takes it before reading what it will change, so
+ *  that no change made meanwhile by another is lost. Readers take no
+ *  lock. The locks are FileChannel locks on files that are never deleted,
+ *  so the system releases them if their holder dies. Within a process a
+ *  lock may be taken again by its holder, and is released when every
+ *  taking of it has been closed. When both are needed, the index lock is
+ *  taken first.
+ *  @author Saksham Agarwal
+ */
+class Lock implements AutoCloseable {
+
+    /** The locks this process holds, by file. */
+    private static final Map<File, Lock> held = new HashMap<>();
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    /** Number of times this process has taken the lock and not closed
+     *  it. */
+    private int count;
+
+    private Lock(File file, FileChannel channel, FileLock lock) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /** Take the lock on FILE, waiting for another process holding it to
+     *  release it. */
+    static synchronized Lock acquire(File file) {
+        return take(file, true);
+    }
+
+    /** Take the lock on FILE if no other process holds it, and otherwise
+     *  return null. */
+    static synchronized Lock tryAcquire(File file) {
+        return take(file, false);
+    }
+
+    private static Lock take(File file, boolean wait) {
+        Lock lock = held.get(file);
+        if (lock == null) {
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+                FileLock fileLock = wait ? channel.lock() : channel.tryLock();
+                if (fileLock == null) {
+                    channel.close();
+                    return null;
+                }
+                lock = new Lock(file, channel, fileLock);
+            } catch (IOException excp) {
+                closeQuietly(channel);
+                throw error("Cannot lock %s.", file.getName());
+            }
+            held.put(file, lock);
+        }
+        lock.count++;
+        return lock;
+    }
+
+    /** Release this taking of the lock. */
+    @Override
+    public void close() {
+        synchronized (Lock.class) {
+            count--;
+            if (count > 0) {
+                return;
+            }
+            held.remove(file);
+            try {
+                lock.release();
+            } catch (IOException excp) {
+                throw error("Cannot unlock %s.", file.getName());
+            } finally {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+}
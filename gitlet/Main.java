@@ -2,10 +2,17 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeMap;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import static gitlet.Utils.*;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
@@ -13,96 +20,292 @@ import static gitlet.Utils.*;
  */
 public class Main {
 
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
+    /** The commands that change the index, and those that change the
+     *  references, which hold the lock of what they change throughout. */
+    private static final Set<String> INDEX_WRITERS = Set.of("add", "rm", "commit",
+            "checkout", "reset", "merge", "gc", "repack", "migrate", "pull");
+    private static final Set<String> REF_WRITERS = Set.of("commit", "branch", "rm-branch",
+            "checkout", "reset", "merge", "gc", "repack", "migrate", "add-remote",
+            "rm-remote", "fetch", "pull");
+
+    /** Usage: java gitlet.Main [--profile] ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ...
+     *  With --profile, the time taken by each phase of the command and the
+     *  work it did are printed to standard error when it ends.
      */
     public static void main(String[] args) {
+        boolean profile = args.length > 0 && args[0].equals("--profile");
+        if (profile) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        Profile.begin(profile);
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } finally {
+            Profile.end(args.length > 0 ? args[0] : "gitlet", System.err);
+        }
+    }
+
+    /** Run the command ARGS. A command that cannot be carried out throws a
+     *  GitletException whose message is to be shown to the user. */
+    static void run(String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw error("Please enter a command.");
         }
         String firstArg = args[0];
-        switch (firstArg) {
-            case "init":
-                Repository.operandCheck(args.length, 1);
-                Repository.initMethod();
-                break;
-            case "add":
-                Repository.operandCheck(args.length, 2);
-                Repository.gitletDirCheck();
-                Repository.add(args[1]);
-                break;
-            case "commit":
-                Repository.gitletDirCheck();
-                if (args.length < 2 || args[1].replaceAll(" ", "").equals("")) {
-                    System.out.println("Please enter a commit message.");
-                    System.exit(0);
-                }
-                Repository.operandCheck(args.length, 2);
-                Repository.commit(args[1]);
-                break;
-            case "rm":
-                Repository.operandCheck(args.length, 2);
-                Repository.gitletDirCheck();
-                Repository.rm(args[1]);
-                break;
-            case "log":
-                Repository.operandCheck(args.length, 1);
-                Repository.gitletDirCheck();
-                Repository.log();
-                break;
-            case "global-log":
-                Repository.operandCheck(args.length, 1);
-                Repository.gitletDirCheck();
-                Repository.globalLog();
-                break;
-            case "find":
-                Repository.operandCheck(args.length, 2);
-                Repository.gitletDirCheck();
-                Repository.find(args[1]);
-                break;
-            case "status":
-                Repository.operandCheck(args.length, 1);
-                Repository.gitletDirCheck();
-                Repository.status();
-                break;
-            case "checkout":
-                Repository.gitletDirCheck();
-                if (args.length == 3 && args[1].equals("--")) {
-                    Repository.checkOut(args[2]);
-                } else if (args.length == 4 && args[2].equals("--")) {
-                    Repository.checkout(args[1], args[3]);
-                } else if (args.length == 2) {
-                    Repository.checkout(args[1]);
-                } else {
-                    System.out.println("Incorrect operands.");
-                    System.exit(0);
-                }
-                break;
-            case "branch":
-                Repository.operandCheck(args.length, 2);
-                Repository.gitletDirCheck();
-                Repository.branch(args[1]);
-                break;
-            case "rm-branch":
-                Repository.gitletDirCheck();
-                Repository.operandCheck(args.length, 2);
-                Repository.rmBranch(args[1]);
-                break;
-            case "reset":
-                Repository.gitletDirCheck();
-                Repository.operandCheck(args.length, 2);
-                Repository.reset(args[1]);
-                break;
-            case "merge":
-                Repository.gitletDirCheck();
-                Repository.operandCheck(args.length, 2);
-                Repository.merge(args[1]);
-                break;
-            default:
-                System.out.println("No command with that name exists.");
-                System.exit(0);
-                break;
+        try (Lock index = lock(INDEX_WRITERS, firstArg, Repository.INDEX_LOCK);
+             Lock refs = lock(REF_WRITERS, firstArg, Repository.REFS_LOCK)) {
+            if (index != null || refs != null) {
+                Repository.recheck();
+            }
+            switch (firstArg) {
+                case "init":
+                    Repository.operandCheck(args.length, 1);
+                    Repository.initMethod();
+                    break;
+                case "add":
+                    if (args.length < 2) {
+                        Repository.operandCheck(args.length, 2);
+                    }
+                    Repository.gitletDirCheck();
+                    Repository.add(Arrays.copyOfRange(args, 1, args.length));
+                    break;
+                case "commit":
+                    Repository.gitletDirCheck();
+                    if (args.length < 2 || args[1].replaceAll(" ", "").equals("")) {
+                        throw error("Please enter a commit message.");
+                    }
+                    Repository.operandCheck(args.length, 2);
+                    Repository.commit(args[1]);
+                    break;
+                case "rm":
+                    Repository.operandCheck(args.length, 2);
+                    Repository.gitletDirCheck();
+                    Repository.rm(args[1]);
+                    break;
+                case "log":
+                    Repository.gitletDirCheck();
+                    log(args);
+                    break;
+                case "global-log":
+                    Repository.operandCheck(args.length, 1);
+                    Repository.gitletDirCheck();
+                    Repository.globalLog();
+                    break;
+                case "find":
+                    Repository.gitletDirCheck();
+                    if (args.length == 3 && args[1].equals("--contains")) {
+                        Repository.find(args[2], true);
+                    } else {
+                        Repository.operandCheck(args.length, 2);
+                        Repository.find(args[1], false);
+                    }
+                    break;
+                case "status":
+                    Repository.operandCheck(args.length, 1);
+                    Repository.gitletDirCheck();
+                    Repository.status();
+                    break;
+                case "diff":
+                    if (args.length > 3) {
+                        throw error("Incorrect operands.");
+                    }
+                    Repository.gitletDirCheck();
+                    Repository.diff(Arrays.copyOfRange(args, 1, args.length));
+                    break;
+                case "checkout":
+                    Repository.gitletDirCheck();
+                    if (args.length == 3 && args[1].equals("--")) {
+                        Repository.checkOut(args[2]);
+                    } else if (args.length == 4 && args[2].equals("--")) {
+                        Repository.checkout(args[1], args[3]);
+                    } else if (args.length == 2) {
+                        Repository.checkout(args[1]);
+                    } else {
+                        throw error("Incorrect operands.");
+                    }
+                    break;
+                case "branch":
+                    Repository.operandCheck(args.length, 2);
+                    Repository.gitletDirCheck();
+                    Repository.branch(args[1]);
+                    break;
+                case "rm-branch":
+                    Repository.gitletDirCheck();
+                    Repository.operandCheck(args.length, 2);
+                    Repository.rmBranch(args[1]);
+                    break;
+                case "reset":
+                    Repository.gitletDirCheck();
+                    Repository.operandCheck(args.length, 2);
+                    Repository.reset(args[1]);
+                    break;
+                case "merge":
+                    Repository.gitletDirCheck();
+                    Repository.operandCheck(args.length, 2);
+                    Repository.merge(args[1]);
+                    break;
+                case "ahead-behind":
+                    Repository.gitletDirCheck();
+                    if (args.length == 2) {
+                        Repository.aheadBehind(Refs.load().currentBranch(), args[1]);
+                    } else {
+                        Repository.operandCheck(args.length, 3);
+                        Repository.aheadBehind(args[1], args[2]);
+                    }
+                    break;
+                case "clone":
+                    Repository.operandCheck(args.length, 2);
+                    Repository.cloneFrom(args[1]);
+                    break;
+                case "add-remote":
+                    Repository.operandCheck(args.length, 3);
+                    Repository.gitletDirCheck();
+                    Repository.addRemote(args[1], args[2]);
+                    break;
+                case "rm-remote":
+                    Repository.operandCheck(args.length, 2);
+                    Repository.gitletDirCheck();
+                    Repository.rmRemote(args[1]);
+                    break;
+                case "fetch":
+                    Repository.operandCheck(args.length, 3);
+                    Repository.gitletDirCheck();
+                    Repository.fetch(args[1], args[2]);
+                    break;
+                case "push":
+                    Repository.operandCheck(args.length, 3);
+                    Repository.gitletDirCheck();
+                    Repository.push(args[1], args[2]);
+                    break;
+                case "pull":
+                    Repository.operandCheck(args.length, 3);
+                    Repository.gitletDirCheck();
+                    Repository.pull(args[1], args[2]);
+                    break;
+                case "repack":
+                    Repository.operandCheck(args.length, 1);
+                    Repository.gitletDirCheck();
+                    Repository.repack();
+                    break;
+                case "gc":
+                    Repository.gitletDirCheck();
+                    if (args.length == 3 && args[1].equals("--grace")) {
+                        Repository.gc(number(args[2]));
+                    } else {
+                        Repository.operandCheck(args.length, 1);
+                        Repository.gc(GarbageCollector.GRACE);
+                    }
+                    break;
+                case "daemon":
+                    if (args.length == 2 && args[1].equals("stop")) {
+                        SocketChannel daemon = Client.connect();
+                        if (daemon == null) {
+                            throw error("No daemon is running.");
+                        }
+                        Client.forward(daemon, args);
+                        break;
+                    }
+                    Repository.operandCheck(args.length, 1);
+                    Repository.gitletDirCheck();
+                    Daemon.serve();
+                    break;
+                case "migrate":
+                    Repository.operandCheck(args.length, 1);
+                    Repository.migrate();
+                    break;
+                default:
+                    throw error("No command with that name exists.");
+            }
+            if (index != null || refs != null) {
+                Repository.settle();
+            }
+        }
+    }
+
+    /** Take the lock FILE if COMMAND is one of COMMANDS and there is a
+     *  repository to lock, and return it, or else return null. */
+    private static Lock lock(Set<String> commands, String command, File file) {
+        if (!commands.contains(command) || !Repository.GITLET_DIR.isDirectory()) {
+            return null;
+        }
+        return Lock.acquire(file);
+    }
+
+    /** Run log with the options ARGS[1..]: -n LIMIT, --since DATE,
+     *  --until DATE, --date-order and --topo-order. A DATE is
+     *  yyyy-MM-dd, or yyyy-MM-ddTHH:mm[:ss], in the local time zone; a
+     *  day alone stands for its start after --since and its end after
+     *  --until. */
+    private static void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        History.Order order = History.Order.FIRST_PARENT;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n":
+                    limit = (int) Math.min(number(operand(args, ++i)), Integer.MAX_VALUE);
+                    break;
+                case "--since":
+                    since = time(operand(args, ++i), false);
+                    break;
+                case "--until":
+                    until = time(operand(args, ++i), true);
+                    break;
+                case "--date-order":
+                    order = History.Order.DATE;
+                    break;
+                case "--topo-order":
+                    order = History.Order.TOPO;
+                    break;
+                default:
+                    throw error("Incorrect operands.");
+            }
+        }
+        Repository.log(limit, since, until, order);
+    }
+
+    /** Return ARGS[I], failing if there is none. */
+    private static String operand(String[] args, int i) {
+        if (i >= args.length) {
+            throw error("Incorrect operands.");
+        }
+        return args[i];
+    }
+
+    /** Return the time in milliseconds since the epoch of the date ARG: if
+     *  it is a day alone, of its start or, if END, of its last
+     *  millisecond. */
+    private static long time(String arg, boolean end) {
+        try {
+            LocalDateTime time;
+            if (arg.contains("T")) {
+                time = LocalDateTime.parse(arg);
+            } else if (end) {
+                time = LocalDate.parse(arg).plusDays(1).atStartOfDay().minusNanos(1_000_000);
+            } else {
+                time = LocalDate.parse(arg).atStartOfDay();
+            }
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Return the whole number, at least 0, given by operand ARG. */
+    private static long number(String arg) {
+        long number;
+        try {
+            number = Long.parseLong(arg);
+        } catch (NumberFormatException excp) {
+            number = -1;
+        }
+        if (number < 0) {
+            throw error("Incorrect operands.");
         }
+        return number;
     }
 }
@@ -0,0 +1,202 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import static gitlet.Utils.*;
+
+/** Upgrades the on-disk layout of an existing repository to the format
+ *  written by this version of gitlet. The format number is kept in
+ *  Repository.FORMAT; repositories created before that file existed are
+ *  format 1.
+ *  @author Saksham Agarwal
+ */
+class Migration {
+
+    /** The format written by this version of gitlet. */
+    static final int CURRENT = 5;
+
+    /** Names of the directories of the staging area before format 3,
+     *  holding a file per path staged for addition or removal. */
+    private static final String STAGING_ADD = ".staging";
+    private static final String STAGING_REMOVE = ".remove";
+
+    /** Return the format of the repository. */
+    static int format() {
+        if (!Repository.FORMAT.isFile()) {
+            return 1;
+        }
+        return Integer.parseInt(readContentsAsString(Repository.FORMAT).trim());
+    }
+
+    /** Apply every migration between the repository's format and CURRENT,
+     *  recording the new format after each one. */
+    static void run() {
+        int format = format();
+        if (format == CURRENT) {
+            System.out.println("Repository is already up to date.");
+            return;
+        }
+        while (format < CURRENT) {
+            switch (format) {
+                case 1:
+                    contentAddressedBlobs();
+                    break;
+                case 2:
+                    stagingToIndex();
+                    break;
+                case 3:
+                    commitTrees();
+                    break;
+                case 4:
+                    textCommits();
+                    break;
+                default:
+                    break;
+            }
+            format++;
+            writeContents(Repository.FORMAT, Integer.toString(format));
+        }
+    }
+
+    /** Format 1 to 2. Blob IDs used to hash the file name along with the
+     *  contents, and loose objects sat in flat directories. Rehash every
+     *  blob by its contents alone, rewrite the file maps of all commits and
+     *  the staging area with the new IDs, and shard every loose object.
+     *  Commit IDs are kept, so the branches and HEAD stay valid. Packed
+     *  objects are unpacked and then packed again under their new IDs. */
+    private static void contentAddressedBlobs() {
+        HashMap<String, String> newIds = new HashMap<>();
+        List<Pack> packs = Pack.packsIn(Repository.PACKS);
+        for (String old : plainFilenamesIn(Repository.BLOBS)) {
+            File loose = join(Repository.BLOBS, old);
+            newIds.put(old, rehashLegacy(loose));
+            loose.delete();
+        }
+        for (Pack pack : packs) {
+            for (int pos = 0; pos < pack.size(); pos++) {
+                if (pack.type(pos) == Pack.BLOB) {
+                    newIds.put(pack.id(pos), rehash(pack.open(pos)));
+                }
+            }
+        }
+        for (String id : plainFilenamesIn(Repository.COMMITS)) {
+            File loose = join(Repository.COMMITS, id);
+            rewrite(readObject(loose, Commit.class), newIds);
+            loose.delete();
+        }
+        for (Pack pack : packs) {
+            for (int pos = 0; pos < pack.size(); pos++) {
+                if (pack.type(pos) == Pack.COMMIT) {
+                    rewrite(Repository.objects().readCommit(pack.id(pos)), newIds);
+                }
+            }
+        }
+        File stagingAdd = join(Repository.GITLET_DIR, STAGING_ADD);
+        for (String file : plainFilenamesIn(stagingAdd)) {
+            File staged = join(stagingAdd, file);
+            String contents = readContentsAsString(staged);
+            if (newIds.containsKey(contents)) {
+                writeContents(staged, newIds.get(contents));
+            } else {
+                writeContents(staged, Repository.objects().writeBlob(readContents(staged)));
+            }
+        }
+        for (Pack pack : packs) {
+            pack.delete();
+        }
+        Repository.objects().reload();
+        if (!packs.isEmpty()) {
+            Repository.objects().repack();
+        }
+    }
+
+    /** Format 2 to 3. Build the index from the head commit's files and the
+     *  additions and removals in the old staging directories, which are
+     *  then deleted. The working files have not been seen yet, so every
+     *  entry will be hashed on its first use. */
+    private static void stagingToIndex() {
+        TreeMap<String, String> files = new TreeMap<>(
+                Repository.objects().readCommit(readContentsAsString(Repository.HEAD)).getFiles());
+        File stagingAdd = join(Repository.GITLET_DIR, STAGING_ADD);
+        File stagingRemove = join(Repository.GITLET_DIR, STAGING_REMOVE);
+        for (String file : plainFilenamesIn(stagingAdd)) {
+            files.put(file, readContentsAsString(join(stagingAdd, file)));
+            join(stagingAdd, file).delete();
+        }
+        for (String file : plainFilenamesIn(stagingRemove)) {
+            files.remove(file);
+            join(stagingRemove, file).delete();
+        }
+        stagingAdd.delete();
+        stagingRemove.delete();
+        Index index = Index.load();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            index.put(entry.getKey(), entry.getValue());
+        }
+        index.save();
+    }
+
+    /** Format 3 to 4. Commits used to hold the map of all their files.
+     *  Store each commit's map as trees and keep only the ID of the root
+     *  tree in the commit. Commit IDs are kept. */
+    private static void commitTrees() {
+        Repository.TREES.mkdir();
+        for (String id : Repository.objects().commitIds()) {
+            Commit commit = Repository.objects().readCommit(id);
+            if (commit.moveFilesToTree()) {
+                Repository.objects().writeCommit(commit);
+            }
+        }
+        if (!Pack.packsIn(Repository.PACKS).isEmpty()) {
+            Repository.objects().repack();
+        }
+    }
+
+    /** Format 4 to 5. Commits used to be stored by Java serialization.
+     *  Store each in the text form of Commit.encode instead. Commit IDs are
+     *  kept. */
+    private static void textCommits() {
+        ObjectDatabase objects = Repository.objects();
+        for (String id : objects.commitIds()) {
+            objects.writeCommit(objects.readCommit(id));
+        }
+        if (!Pack.packsIn(Repository.PACKS).isEmpty()) {
+            objects.repack();
+        }
+    }
+
+    /** Store the contents of LEGACY, a loose blob of format 1, which holds
+     *  them as they are, as a blob and return its ID. The blob stored is
+     *  read back and compared with them first, since LEGACY is deleted
+     *  once it has been rehashed. */
+    private static String rehashLegacy(File legacy) {
+        byte[] contents = readContents(legacy);
+        String id = Repository.objects().writeBlob(contents);
+        if (!Arrays.equals(Repository.objects().readBlob(id), contents)) {
+            throw error("Cannot migrate blob %s.", legacy.getName());
+        }
+        return id;
+    }
+
+    /** Store the contents read from IN as a blob, returning its new ID. */
+    private static String rehash(InputStream in) {
+        try (in) {
+            return Repository.objects().writeBlob(in);
+        } catch (IOException excp) {
+            throw error("Cannot read blob.");
+        }
+    }
+
+    /** Replace the blob IDs in the file map of COMMIT by their NEWIDS and
+     *  store it as a loose object. */
+    private static void rewrite(Commit commit, HashMap<String, String> newIds) {
+        commit.getFiles().replaceAll((name, blob) -> newIds.getOrDefault(blob, blob));
+        Repository.objects().writeCommit(commit);
+    }
+}
@@ -0,0 +1,152 @@
+package gitlet;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/** An object database that keeps the commits and trees most recently read
+ *  from another, parsed, so that a command reading the same object again
+ *  does not read and parse it again. The cache holds objects of at most
+ *  about CAPACITY bytes in all, dropping the least recently used first.
+ *  Blobs are not cached, since they are streamed.
+ *  @author Saksham Agarwal
+ */
+class ObjectCache implements ObjectDatabase {
+
+    /** Default bound on the estimated size of the cached objects. */
+    static final long CAPACITY = 16 << 20;
+    /** Estimated size of a commit besides its message, and of a tree entry
+     *  and a tree besides its entries. */
+    private static final int COMMIT_SIZE = 256;
+    private static final int ENTRY_SIZE = 96;
+    private static final int TREE_SIZE = 64;
+
+    /** The database read through. */
+    private final ObjectDatabase objects;
+    /** Bound on the total estimated size of the cached objects. */
+    private final long capacity;
+    /** The cached commits and trees by ID, least recently used first. */
+    private final LinkedHashMap<String, Object> cache = new LinkedHashMap<>(64, 0.75f, true);
+    /** Total estimated size of the cached objects. */
+    private long size;
+
+    /** A cache of objects read from OBJECTS holding about CAPACITY bytes. */
+    ObjectCache(ObjectDatabase objects, long capacity) {
+        this.objects = objects;
+        this.capacity = capacity;
+    }
+
+    public Commit readCommit(String id) {
+        Object cached = lookup(id);
+        if (cached instanceof Commit) {
+            return (Commit) cached;
+        }
+        Commit commit = objects.readCommit(id);
+        store(id, commit);
+        return commit;
+    }
+
+    public void writeCommit(Commit commit) {
+        objects.writeCommit(commit);
+        Object old = cache.remove(commit.id());
+        if (old != null) {
+            size -= sizeOf(old);
+        }
+        store(commit.id(), commit);
+    }
+
+    public boolean hasCommit(String id) {
+        return cache.get(id) instanceof Commit || objects.hasCommit(id);
+    }
+
+    public List<String> commitIds() {
+        return objects.commitIds();
+    }
+
+    public List<String> treeIds() {
+        return objects.treeIds();
+    }
+
+    public List<String> blobIds() {
+        return objects.blobIds();
+    }
+
+    public long modified(String id) {
+        return objects.modified(id);
+    }
+
+    public void prune(Predicate<String> keep) {
+        cache.clear();
+        size = 0;
+        objects.prune(keep);
+    }
+
+    public Tree readTree(String id) {
+        Object cached = lookup(id);
+        if (cached instanceof Tree) {
+            return (Tree) cached;
+        }
+        Tree tree = objects.readTree(id);
+        store(id, tree);
+        return tree;
+    }
+
+    public void writeTree(String id, byte[] contents) {
+        objects.writeTree(id, contents);
+    }
+
+    public boolean hasBlob(String id) {
+        return objects.hasBlob(id);
+    }
+
+    public InputStream openBlob(String id) {
+        return objects.openBlob(id);
+    }
+
+    public void prefetch(Collection<String> ids) {
+        objects.prefetch(ids);
+    }
+
+    public String writeBlob(InputStream in) {
+        return objects.writeBlob(in);
+    }
+
+    public void repack() {
+        objects.repack();
+    }
+
+    public void reload() {
+        cache.clear();
+        size = 0;
+        objects.reload();
+    }
+
+    private Object lookup(String id) {
+        Object cached = cache.get(id);
+        Profile.count(cached != null ? Profile.Counter.CACHE_HITS
+                : Profile.Counter.CACHE_MISSES, 1);
+        return cached;
+    }
+
+    /** Cache OBJECT under ID, dropping the least recently used objects
+     *  until the cache is within its capacity again. */
+    private void store(String id, Object object) {
+        cache.put(id, object);
+        size += sizeOf(object);
+        while (size > capacity && cache.size() > 1) {
+            Map.Entry<String, Object> eldest = cache.entrySet().iterator().next();
+            size -= sizeOf(eldest.getValue());
+            cache.remove(eldest.getKey());
+        }
+    }
+
+    private static long sizeOf(Object object) {
+        if (object instanceof Commit) {
+            return COMMIT_SIZE + 2L * ((Commit) object).getMessage().length();
+        }
+        return TREE_SIZE + (long) ENTRY_SIZE * ((Tree) object).entries().size();
+    }
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import static gitlet.Utils.*;
+
+/** A store of the commits, trees and blobs of a repository. Every object
+ *  read or written by gitlet goes through the database returned by
+ *  Repository.objects(), so a different way of keeping objects needs only
+ *  a new implementation of this interface.
+ *  @author Saksham Agarwal
+ */
+interface ObjectDatabase {
+
+    Commit readCommit(String id);
+
+    void writeCommit(Commit commit);
+
+    boolean hasCommit(String id);
+
+    /** Return the IDs of all commits, in sorted order. */
+    List<String> commitIds();
+
+    /** Return the IDs of all trees, in sorted order. */
+    List<String> treeIds();
+
+    /** Return the IDs of all blobs, in sorted order. */
+    List<String> blobIds();
+
+    /** Return the time object ID was written, in milliseconds, or 0 if
+     *  there is no such object. */
+    long modified(String id);
+
+    /** Delete every object KEEP rejects. */
+    void prune(Predicate<String> keep);
+
+    Tree readTree(String id);
+
+    /** Store the tree ID, stored as CONTENTS, unless it already is. */
+    void writeTree(String id, byte[] contents);
+
+    boolean hasBlob(String id);
+
+    /** Return a stream over the contents of blob ID. */
+    InputStream openBlob(String id);
+
+    /** Store the contents read from IN as a blob and return its ID. */
+    String writeBlob(InputStream in);
+
+    /** Move the objects into the most compact form the database has. */
+    void repack();
+
+    /** Forget anything read so far, so that objects written by another
+     *  process are seen. */
+    void reload();
+
+    /** Make the blobs IDS ready to be read, all at once where that is
+     *  cheaper than one at a time. */
+    default void prefetch(Collection<String> ids) {
+    }
+
+    default byte[] readBlob(String id) {
+        try (InputStream in = openBlob(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw error("Cannot read blob %s.", id);
+        }
+    }
+
+    default String readBlobAsString(String id) {
+        return new String(readBlob(id), StandardCharsets.UTF_8);
+    }
+
+    /** Write the contents of blob ID to DEST through a bounded buffer. */
+    default void copyBlob(String id, File dest) {
+        try (InputStream in = openBlob(id);
+             OutputStream out = new FileOutputStream(dest)) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw error("Cannot write %s.", dest.getName());
+        }
+    }
+
+    /** Store the contents of FILE as a blob and return its ID. */
+    default String writeBlob(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return writeBlob(in);
+        } catch (IOException excp) {
+            throw error("Cannot read %s.", file.getName());
+        }
+    }
+
+    /** Store CONTENTS as a blob and return its ID. */
+    default String writeBlob(byte[] contents) {
+        return writeBlob(new ByteArrayInputStream(contents));
+    }
+}
@@ -0,0 +1,549 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import static gitlet.Utils.*;
+
+/** The object database of a repository kept in files of its gitlet
+ *  directory. New objects are written loose, one file each under the
+ *  directories Repository.COMMITS, Repository.TREES and Repository.BLOBS
+ *  name, with blobs deflated; repack() moves every object into a single
+ *  pack under Repository.PACKS. Objects are looked up loose first,
+ *  then in the packs. A blob's ID is the SHA-1 of its contents alone, so a
+ *  file's contents are stored once however many names they appear under.
+ *  Loose objects are sharded into subdirectories named by the first two
+ *  hexadecimal digits of their IDs.
+ *  @author Saksham Agarwal
+ */
+class ObjectStore implements ObjectDatabase {
+
+    /** Number of preceding versions of a file tried as delta bases. */
+    private static final int DELTA_WINDOW = 10;
+    /** Longest chain of deltas needed to rebuild one object. */
+    private static final int MAX_DEPTH = 10;
+    /** Blobs larger than this many bytes are always stored whole. */
+    private static final int DELTA_LIMIT = 16 << 20;
+
+    /** The repository directory holding the objects. */
+    private final File dir;
+    /** Directories of the loose commits, trees and blobs, and of the
+     *  packs. */
+    private final File commits;
+    private final File trees;
+    private final File blobs;
+    private final File packDir;
+    /** The packs of the repository, loaded on first use. */
+    private List<Pack> packs;
+
+    /** The objects of the repository whose gitlet directory is DIR. */
+    ObjectStore(File dir) {
+        this.dir = dir;
+        commits = join(dir, Repository.COMMITS.getName());
+        trees = join(dir, Repository.TREES.getName());
+        blobs = join(dir, Repository.BLOBS.getName());
+        packDir = join(dir, Repository.PACKS.getName());
+    }
+
+    public Commit readCommit(String id) {
+        Profile.count(Profile.Counter.OBJECTS_READ, 1);
+        try (Profile.Timer timer = Profile.time(Profile.Phase.READ_OBJECTS)) {
+            File loose = looseFile(commits, id);
+            return decodeCommit(id, loose.isFile() ? readContents(loose) : readPacked(id));
+        }
+    }
+
+    /** Store COMMIT in the text form of Commit.encode, or by Java
+     *  serialization if it is a commit written before trees that has not
+     *  been migrated yet. */
+    public void writeCommit(Commit commit) {
+        Profile.count(Profile.Counter.OBJECTS_WRITTEN, 1);
+        try (Profile.Timer timer = Profile.time(Profile.Phase.WRITE_OBJECTS)) {
+            File loose = looseFile(commits, commit.id());
+            loose.getParentFile().mkdir();
+            if (commit.hasLegacyFiles()) {
+                writeObject(loose, commit);
+                Journal.written(loose);
+            } else {
+                writeLoose(loose, commit.encode());
+            }
+        }
+    }
+
+    public boolean hasCommit(String id) {
+        if (looseFile(commits, id).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.type(pos) == Pack.COMMIT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the IDs of all commits, loose and packed, in sorted order. */
+    public List<String> commitIds() {
+        return allIds(looseIds(commits), Pack.COMMIT);
+    }
+
+    public List<String> treeIds() {
+        return allIds(looseIds(trees), Pack.TREE);
+    }
+
+    public List<String> blobIds() {
+        return allIds(looseIds(blobs), Pack.BLOB);
+    }
+
+    /** Return the time object ID was written: the modification time of
+     *  its loose file or, if it is packed, of its pack. */
+    public long modified(String id) {
+        for (File objectDir : new File[] {commits, trees, blobs}) {
+            long time = looseFile(objectDir, id).lastModified();
+            if (time != 0) {
+                return time;
+            }
+        }
+        Pack pack = findPacked(id);
+        return pack == null ? 0 : pack.modified();
+    }
+
+    /** Delete every object KEEP rejects. Loose objects are deleted one by
+     *  one; if a packed object is rejected, the kept objects are packed
+     *  again without it. */
+    public void prune(Predicate<String> keep) {
+        boolean repack = false;
+        for (Pack pack : packs()) {
+            for (int pos = 0; pos < pack.size() && !repack; pos++) {
+                repack = !keep.test(pack.id(pos));
+            }
+        }
+        if (repack) {
+            repack(keep);
+        }
+        for (File objectDir : new File[] {commits, trees, blobs}) {
+            for (String id : looseIds(objectDir)) {
+                if (!keep.test(id)) {
+                    deleteLoose(objectDir, id);
+                }
+            }
+        }
+    }
+
+    public Tree readTree(String id) {
+        Profile.count(Profile.Counter.OBJECTS_READ, 1);
+        try (Profile.Timer timer = Profile.time(Profile.Phase.READ_OBJECTS)) {
+            File loose = looseFile(trees, id);
+            if (loose.isFile()) {
+                return new Tree(readContents(loose));
+            }
+            return new Tree(readPacked(id));
+        }
+    }
+
+    /** Store the tree ID, stored as CONTENTS, unless it already is. */
+    public void writeTree(String id, byte[] contents) {
+        File loose = looseFile(trees, id);
+        if (loose.isFile() || findPacked(id) != null) {
+            return;
+        }
+        Profile.count(Profile.Counter.OBJECTS_WRITTEN, 1);
+        try (Profile.Timer timer = Profile.time(Profile.Phase.WRITE_OBJECTS)) {
+            loose.getParentFile().mkdirs();
+            writeLoose(loose, contents);
+        }
+    }
+
+    /** Write loose object LOOSE with CONTENTS, by renaming a temporary file
+     *  to it, so that a crash cannot leave it partly written. */
+    private void writeLoose(File loose, byte[] contents) {
+        try {
+            Path tmp = Files.createTempFile(dir.toPath(), "object", null);
+            Files.write(tmp, contents);
+            Files.move(tmp, loose.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write object.");
+        }
+        Journal.written(loose);
+    }
+
+    public boolean hasBlob(String id) {
+        return looseFile(blobs, id).isFile() || findPacked(id) != null;
+    }
+
+    /** Return a stream over the contents of blob ID. */
+    public InputStream openBlob(String id) {
+        File loose = looseFile(blobs, id);
+        if (loose.isFile()) {
+            return openLoose(loose);
+        }
+        for (Pack pack : packs()) {
+            int pos = pack.find(id);
+            if (pos >= 0) {
+                return pack.open(pos);
+            }
+        }
+        throw error("No object with id %s.", id);
+    }
+
+    /** Store the contents read from IN as a blob and return its ID. The
+     *  contents are hashed and deflated into a
+     *  temporary file in the same pass, so each byte is read only once and
+     *  memory use does not depend on the size of the blob. */
+    public String writeBlob(InputStream in) {
+        MessageDigest md = sha1Digest();
+        Path tmp;
+        try (Profile.Timer timer = Profile.time(Profile.Phase.WRITE_OBJECTS)) {
+            tmp = Files.createTempFile(dir.toPath(), "blob", null);
+            try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp.toFile()), Pack.BUFFER_SIZE))) {
+                byte[] buf = new byte[Pack.BUFFER_SIZE];
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                    out.write(buf, 0, n);
+                    Profile.count(Profile.Counter.BYTES_HASHED, n);
+                }
+            }
+            String id = Pack.toHex(md.digest());
+            File dest = looseFile(blobs, id);
+            if (dest.exists() || findPacked(id) != null) {
+                Files.delete(tmp);
+            } else {
+                Profile.count(Profile.Counter.OBJECTS_WRITTEN, 1);
+                dest.getParentFile().mkdir();
+                Files.move(tmp, dest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Journal.written(dest);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw error("Cannot write blob.");
+        }
+    }
+
+    /** Return the blob ID of the contents of FILE without storing them. */
+    static String hash(File file) {
+        MessageDigest md = sha1Digest();
+        try (Profile.Timer timer = Profile.time(Profile.Phase.HASH);
+             InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[Pack.BUFFER_SIZE];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                md.update(buf, 0, n);
+                Profile.count(Profile.Counter.BYTES_HASHED, n);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read %s.", file.getName());
+        }
+        return Pack.toHex(md.digest());
+    }
+
+    /** Return the file holding loose object ID in object directory DIR. */
+    static File looseFile(File dir, String id) {
+        return join(dir, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Return the IDs of the loose objects in object directory DIR, in
+     *  sorted order. */
+    static List<String> looseIds(File dir) {
+        List<String> ids = new ArrayList<>();
+        String[] shards = dir.list((d, name) -> name.length() == 2);
+        if (shards == null) {
+            return ids;
+        }
+        Arrays.sort(shards);
+        for (String shard : shards) {
+            List<String> names = plainFilenamesIn(join(dir, shard));
+            if (names != null) {
+                for (String name : names) {
+                    ids.add(shard + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Delete loose object ID of object directory DIR, and its shard
+     *  directory if that is left empty. */
+    private static void deleteLoose(File dir, String id) {
+        File loose = looseFile(dir, id);
+        loose.delete();
+        loose.getParentFile().delete();
+    }
+
+    /** Return a stream over the loose blob LOOSE, which is deflated. Blobs
+     *  written before compression exist only in repositories of format 1,
+     *  and are read by Migration as they are. */
+    static InputStream openLoose(File loose) {
+        try {
+            return new InflaterInputStream(new BufferedInputStream(
+                    new FileInputStream(loose), Pack.BUFFER_SIZE));
+        } catch (IOException excp) {
+            throw error("Cannot read blob %s.", loose.getName());
+        }
+    }
+
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Return the pack holding object ID, or null if it is not packed. */
+    private Pack findPacked(String id) {
+        for (Pack pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    private byte[] readPacked(String id) {
+        Pack pack = findPacked(id);
+        if (pack == null) {
+            throw error("No object with id %s.", id);
+        }
+        return pack.read(pack.find(id));
+    }
+
+    /** Forget the packs loaded so far, so that they are listed again. */
+    public synchronized void reload() {
+        packs = null;
+    }
+
+    private synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = Pack.packsIn(packDir);
+        }
+        return packs;
+    }
+
+    /** Return true if CONTENTS start with the magic of a Java
+     *  serialization stream, as commits did before format 5. */
+    static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2
+                && (contents[0] & 0xff) == 0xac && (contents[1] & 0xff) == 0xed;
+    }
+
+    /** Return commit ID, stored as CONTENTS in either form. */
+    private static Commit decodeCommit(String id, byte[] contents) {
+        if (!isSerialized(contents)) {
+            return Commit.decode(id, contents);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(contents))) {
+            return (Commit) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException excp) {
+            throw error("Corrupt commit object.");
+        }
+    }
+
+    /** Move every loose and packed object into one new pack. Blobs that
+     *  are versions of the same file are visited newest first, and each is
+     *  stored as a delta against one of the few versions before it when
+     *  that saves at least half of its size. */
+    public void repack() {
+        repack(id -> true);
+    }
+
+    /** Move the loose and packed objects KEEP accepts into one new pack,
+     *  as repack() does. Packed objects it rejects are dropped, and loose
+     *  ones are left as they are. The objects reachable from an accepted
+     *  commit or tree must all be accepted. */
+    private void repack(Predicate<String> keep) {
+        packDir.mkdir();
+        List<String> looseCommits = looseIds(commits);
+        List<String> looseTrees = looseIds(trees);
+        List<String> looseBlobs = looseIds(blobs);
+        LinkedHashMap<String, String> blobPaths = new LinkedHashMap<>();
+        Set<String> seenTrees = new HashSet<>();
+        Pack.Writer writer = new Pack.Writer(packDir);
+        for (String id : commitsByRecency()) {
+            if (!keep.test(id)) {
+                continue;
+            }
+            File loose = looseFile(commits, id);
+            writer.add(id, Pack.COMMIT, loose.isFile() ? readContents(loose) : readPacked(id));
+            packTree(writer, readCommit(id).getTreeID(), "", seenTrees, blobPaths);
+        }
+        for (String id : allIds(looseTrees, Pack.TREE)) {
+            if (keep.test(id)) {
+                packTree(writer, id, "", seenTrees, blobPaths);
+            }
+        }
+        for (String id : allIds(looseBlobs, Pack.BLOB)) {
+            if (keep.test(id)) {
+                blobPaths.putIfAbsent(id, "");
+            }
+        }
+        Map<String, List<String>> byPath = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : blobPaths.entrySet()) {
+            byPath.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+        for (List<String> versions : byPath.values()) {
+            packVersions(writer, versions);
+        }
+        Pack packed = writer.finish();
+        Journal.sync();
+        for (Pack pack : packs()) {
+            if (!pack.name().equals(packed.name())) {
+                pack.delete();
+            }
+        }
+        for (String id : looseCommits) {
+            if (keep.test(id)) {
+                deleteLoose(commits, id);
+            }
+        }
+        for (String id : looseTrees) {
+            if (keep.test(id)) {
+                deleteLoose(trees, id);
+            }
+        }
+        for (String id : looseBlobs) {
+            if (keep.test(id)) {
+                deleteLoose(blobs, id);
+            }
+        }
+        packs = null;
+    }
+
+    /** Add tree ID, whose files are under directory PREFIX, and all its
+     *  subtrees to WRITER unless they are in SEEN. Record the path of each
+     *  blob they name in BLOBPATHS if it has none yet, leaving out those a
+     *  partial clone lacks. */
+    private void packTree(Pack.Writer writer, String id, String prefix,
+                                 Set<String> seen, Map<String, String> blobPaths) {
+        if (id == null || !seen.add(id)) {
+            return;
+        }
+        File loose = looseFile(trees, id);
+        byte[] contents = loose.isFile() ? readContents(loose) : readPacked(id);
+        writer.add(id, Pack.TREE, contents);
+        Tree tree = new Tree(contents);
+        for (Map.Entry<String, String> entry : tree.entries().entrySet()) {
+            String path = prefix + entry.getKey();
+            if (tree.isTree(entry.getKey())) {
+                packTree(writer, entry.getValue(), path + "/", seen, blobPaths);
+            } else if (hasBlob(entry.getValue())) {
+                blobPaths.putIfAbsent(entry.getValue(), path);
+            }
+        }
+    }
+
+    /** Add the blobs VERSIONS of one file to WRITER, delta-compressing each
+     *  against the best of the DELTA_WINDOW versions added before it. */
+    private void packVersions(Pack.Writer writer, List<String> versions) {
+        LinkedList<String> window = new LinkedList<>();
+        Map<String, byte[]> contents = new HashMap<>();
+        Map<String, Integer> depth = new HashMap<>();
+        for (String id : versions) {
+            byte[] data;
+            try (InputStream in = openBlob(id)) {
+                data = in.readNBytes(DELTA_LIMIT + 1);
+                if (data.length > DELTA_LIMIT) {
+                    writer.add(id, Pack.BLOB,
+                            new SequenceInputStream(new ByteArrayInputStream(data), in));
+                    continue;
+                }
+            } catch (IOException excp) {
+                throw error("Cannot read blob %s.", id);
+            }
+            String bestBase = null;
+            byte[] bestDelta = null;
+            for (String base : window) {
+                if (depth.get(base) >= MAX_DEPTH) {
+                    continue;
+                }
+                byte[] delta = Delta.create(contents.get(base), data);
+                if (bestDelta == null || delta.length < bestDelta.length) {
+                    bestBase = base;
+                    bestDelta = delta;
+                }
+            }
+            if (bestDelta != null && bestDelta.length < data.length / 2) {
+                writer.addDelta(id, Pack.BLOB, bestBase, bestDelta);
+                depth.put(id, depth.get(bestBase) + 1);
+            } else {
+                writer.add(id, Pack.BLOB, data);
+                depth.put(id, 0);
+            }
+            window.addFirst(id);
+            contents.put(id, data);
+            if (window.size() > DELTA_WINDOW) {
+                contents.remove(window.removeLast());
+            }
+        }
+    }
+
+    /** Return every commit ID, those reachable from the branches first in
+     *  breadth-first order from the tips, then any unreachable ones. */
+    private List<String> commitsByRecency() {
+        Set<String> seen = new HashSet<>();
+        List<String> result = new ArrayList<>();
+        Queue<String> fringe = new LinkedList<>();
+        File branches = join(dir, Repository.BRANCHES.getName());
+        for (String branch : plainFilenamesIn(branches)) {
+            fringe.add(readContentsAsString(join(branches, branch)));
+        }
+        while (!fringe.isEmpty()) {
+            String id = fringe.remove();
+            if (id == null || !seen.add(id)) {
+                continue;
+            }
+            result.add(id);
+            Commit c = readCommit(id);
+            fringe.add(c.getParentID());
+            fringe.add(c.get2ndparent());
+        }
+        for (String id : commitIds()) {
+            if (seen.add(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Return the IDs of all objects of TYPE, those in LOOSE and the
+     *  packed ones, in sorted order. */
+    private List<String> allIds(List<String> loose, int type) {
+        TreeSet<String> ids = new TreeSet<>(loose);
+        for (Pack pack : packs()) {
+            for (int pos = 0; pos < pack.size(); pos++) {
+                if (pack.type(pos) == type) {
+                    ids.add(pack.id(pos));
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+}
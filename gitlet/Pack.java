@@ -0,0 +1,404 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import static gitlet.Utils.*;
+
+/** A pack file: many objects appended into one file, each deflated and
+ *  optionally stored as a delta against another object of the same pack,
+ *  together with a sorted index from object ID to offset.
+ *
+ *  The pack starts with the magic "GPCK", a version and the object count;
+ *  each entry is a type byte, the inflated size, the deflated size, the ID
+ *  of the base object if the entry is a delta, and the deflated data.
+ *  The index starts with the magic "GIDX" and a version, then a 256-entry
+ *  fan-out table of cumulative counts by first ID byte, the sorted 20-byte
+ *  IDs, the type of each object and its offset in the pack.
+ *  @author Saksham Agarwal
+ */
+class Pack {
+
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+    static final int TREE = 3;
+    /** Entry type of an object stored as a delta against another one. */
+    static final int DELTA = 7;
+
+    private static final int PACK_MAGIC = 0x4750434b;
+    private static final int IDX_MAGIC = 0x47494458;
+    private static final int VERSION = 1;
+    private static final int ID_BYTES = 20;
+    private static final int FANOUT = 256;
+    /** Bytes of the pack header and of the fixed part of an entry header. */
+    private static final int PACK_HEADER = 12;
+    private static final int ENTRY_HEADER = 17;
+    /** Size of the buffers used when streaming objects. */
+    static final int BUFFER_SIZE = 1 << 16;
+    /** Offset of the first ID in the index. */
+    private static final int IDS = 8 + FANOUT * 4;
+
+    /** The pack file. */
+    private final File packFile;
+    /** The memory-mapped index of this pack. */
+    private final MappedByteBuffer idx;
+    /** Number of objects in this pack. */
+    private final int count;
+
+    /** Open the pack whose index file is IDXFILE. */
+    Pack(File idxFile) {
+        String name = idxFile.getName();
+        packFile = join(idxFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        try (RandomAccessFile raf = new RandomAccessFile(idxFile, "r")) {
+            idx = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException excp) {
+            throw error("Cannot read pack index %s.", name);
+        }
+        if (idx.getInt(0) != IDX_MAGIC || idx.getInt(4) != VERSION) {
+            throw error("Bad pack index %s.", name);
+        }
+        count = idx.getInt(8 + (FANOUT - 1) * 4);
+    }
+
+    /** Number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /** The name of this pack. */
+    String name() {
+        String name = packFile.getName();
+        return name.substring(0, name.length() - 5);
+    }
+
+    /** The time the pack file was last modified, in milliseconds. */
+    long modified() {
+        return packFile.lastModified();
+    }
+
+    /** The ID of the object at position POS of the index. */
+    String id(int pos) {
+        byte[] raw = new byte[ID_BYTES];
+        idx.get(IDS + pos * ID_BYTES, raw);
+        return toHex(raw);
+    }
+
+    /** The type of the object at position POS of the index. */
+    int type(int pos) {
+        return idx.get(IDS + count * ID_BYTES + pos);
+    }
+
+    private long offset(int pos) {
+        return idx.getLong(IDS + count * (ID_BYTES + 1) + pos * 8);
+    }
+
+    /** Return the index position of object ID, or -1 if it is not in this
+     *  pack. The fan-out table narrows the binary search to the IDs that
+     *  share ID's first byte. */
+    int find(String id) {
+        byte[] key = toBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : idx.getInt(8 + (first - 1) * 4);
+        int hi = idx.getInt(8 + first * 4) - 1;
+        byte[] probe = new byte[ID_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idx.get(IDS + mid * ID_BYTES, probe);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the inflated contents of the object at index position POS,
+     *  resolving any chain of deltas. */
+    byte[] read(int pos) {
+        try (FileChannel channel = FileChannel.open(packFile.toPath())) {
+            return read(channel, offset(pos));
+        } catch (IOException excp) {
+            throw error("Cannot read pack %s.", packFile.getName());
+        }
+    }
+
+    /** Return a stream over the contents of the object at index position
+     *  POS. An object stored whole is inflated as it is read; a delta is
+     *  resolved in memory first. */
+    InputStream open(int pos) {
+        try {
+            FileChannel channel = FileChannel.open(packFile.toPath());
+            Entry entry = new Entry(channel, offset(pos));
+            if (entry.base != null) {
+                channel.close();
+                return new ByteArrayInputStream(read(pos));
+            }
+            channel.position(entry.dataStart);
+            return new InflaterInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel), BUFFER_SIZE));
+        } catch (IOException excp) {
+            throw error("Cannot read pack %s.", packFile.getName());
+        }
+    }
+
+    private byte[] read(FileChannel channel, long offset) throws IOException {
+        Entry entry = new Entry(channel, offset);
+        ByteBuffer data = ByteBuffer.allocate((int) entry.deflated);
+        while (data.hasRemaining()) {
+            if (channel.read(data, entry.dataStart + data.position()) < 0) {
+                throw error("Truncated pack %s.", packFile.getName());
+            }
+        }
+        byte[] contents = inflate(data.array(), (int) entry.size);
+        if (entry.base == null) {
+            return contents;
+        }
+        int basePos = find(entry.base);
+        if (basePos < 0) {
+            throw error("Missing delta base %s.", entry.base);
+        }
+        return Delta.apply(read(channel, offset(basePos)), contents);
+    }
+
+    /** The header of one entry of the pack. */
+    private static class Entry {
+        /** Inflated and deflated sizes of the entry's data. */
+        private final long size;
+        private final long deflated;
+        /** The ID of the delta base, or null if the object is stored whole. */
+        private final String base;
+        /** Offset of the deflated data in the pack. */
+        private final long dataStart;
+
+        /** Read the header of the entry at OFFSET of CHANNEL. */
+        Entry(FileChannel channel, long offset) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER + ID_BYTES);
+            channel.read(header, offset);
+            header.flip();
+            int type = header.get();
+            size = header.getLong();
+            deflated = header.getLong();
+            if (type == DELTA) {
+                byte[] raw = new byte[ID_BYTES];
+                header.get(raw);
+                base = toHex(raw);
+                dataStart = offset + ENTRY_HEADER + ID_BYTES;
+            } else {
+                base = null;
+                dataStart = offset + ENTRY_HEADER;
+            }
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                n += inflater.inflate(result, n, size - n);
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw error("Corrupt pack entry.");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Return the packs found in DIR. */
+    static List<Pack> packsIn(File dir) {
+        List<Pack> packs = new ArrayList<>();
+        File[] idxFiles = dir.listFiles((d, name) -> name.endsWith(".idx"));
+        if (idxFiles != null) {
+            Arrays.sort(idxFiles);
+            for (File f : idxFiles) {
+                packs.add(new Pack(f));
+            }
+        }
+        return packs;
+    }
+
+    /** Delete the files of this pack. */
+    void delete() {
+        join(packFile.getParentFile(), name() + ".idx").delete();
+        packFile.delete();
+    }
+
+    /** Appends objects to a new pack and writes its index when finished.
+     *  Each entry is deflated straight into the pack; the sizes in its
+     *  header are filled in by finish(). */
+    static class Writer {
+        private final File dir;
+        private final File tmp;
+        private final DataOutputStream out;
+        private final List<String> ids = new ArrayList<>();
+        private final List<Integer> types = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        /** Inflated and deflated size of each entry, in order of addition. */
+        private final List<long[]> sizes = new ArrayList<>();
+        private long written;
+
+        /** A writer of a new pack in directory DIR. */
+        Writer(File dir) {
+            this.dir = dir;
+            tmp = join(dir, "tmp-" + System.nanoTime() + ".pack");
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmp), BUFFER_SIZE));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(0);
+            } catch (IOException excp) {
+                throw error("Cannot write pack.");
+            }
+            written = PACK_HEADER;
+        }
+
+        /** Append object ID of TYPE with contents DATA. */
+        void add(String id, int type, byte[] data) {
+            add(id, type, new ByteArrayInputStream(data));
+        }
+
+        /** Append object ID of TYPE whose contents are read from IN. */
+        void add(String id, int type, InputStream in) {
+            append(id, type, type, null, in);
+        }
+
+        /** Append object ID of TYPE, stored as DELTA against BASE. */
+        void addDelta(String id, int type, String base, byte[] delta) {
+            append(id, type, DELTA, base, new ByteArrayInputStream(delta));
+        }
+
+        private void append(String id, int type, int entryType, String base, InputStream in) {
+            ids.add(id);
+            types.add(type);
+            offsets.add(written);
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                out.writeByte(entryType);
+                out.writeLong(0);
+                out.writeLong(0);
+                written += ENTRY_HEADER;
+                if (base != null) {
+                    out.write(toBytes(base));
+                    written += ID_BYTES;
+                }
+                DeflaterOutputStream d = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                in.transferTo(d);
+                d.finish();
+                sizes.add(new long[] {deflater.getBytesRead(), deflater.getBytesWritten()});
+                written += deflater.getBytesWritten();
+            } catch (IOException excp) {
+                throw error("Cannot write pack.");
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /** Close the pack, write its index, and return it opened. */
+        Pack finish() {
+            Integer[] order = new Integer[ids.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+            List<Object> sorted = new ArrayList<>();
+            for (int i : order) {
+                sorted.add(ids.get(i));
+            }
+            String name = "pack-" + sha1(sorted);
+            try {
+                out.close();
+                try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                    raf.seek(8);
+                    raf.writeInt(ids.size());
+                    for (int i = 0; i < ids.size(); i++) {
+                        raf.seek(offsets.get(i) + 1);
+                        raf.writeLong(sizes.get(i)[0]);
+                        raf.writeLong(sizes.get(i)[1]);
+                    }
+                }
+                File packFile = join(dir, name + ".pack");
+                if (!tmp.renameTo(packFile)) {
+                    throw error("Cannot write pack.");
+                }
+                Journal.written(packFile);
+                File idxTmp = join(dir, name + ".idx.tmp");
+                try (DataOutputStream idxOut = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(idxTmp)))) {
+                    idxOut.writeInt(IDX_MAGIC);
+                    idxOut.writeInt(VERSION);
+                    int[] fanout = new int[FANOUT];
+                    for (String id : ids) {
+                        fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+                    }
+                    int total = 0;
+                    for (int i = 0; i < FANOUT; i++) {
+                        total += fanout[i];
+                        idxOut.writeInt(total);
+                    }
+                    for (int i : order) {
+                        idxOut.write(toBytes(ids.get(i)));
+                    }
+                    for (int i : order) {
+                        idxOut.writeByte(types.get(i));
+                    }
+                    for (int i : order) {
+                        idxOut.writeLong(offsets.get(i));
+                    }
+                }
+                File idxFile = join(dir, name + ".idx");
+                if (!idxTmp.renameTo(idxFile)) {
+                    throw error("Cannot write pack.");
+                }
+                Journal.written(idxFile);
+                return new Pack(idxFile);
+            } catch (IOException excp) {
+                throw error("Cannot write pack.");
+            }
+        }
+    }
+
+    /** Return the 20 bytes encoded by the hexadecimal string HEX. */
+    static byte[] toBytes(String hex) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return BYTES as a lowercase hexadecimal string. */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            result[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(result);
+    }
+}
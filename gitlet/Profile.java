@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Measurements of the command being run: the wall time spent in each
+ *  Phase, and a count of each Counter. Each timed phase is also emitted as
+ *  a gitlet.Phase JFR event, and each command, with its counts, as a
+ *  gitlet.Command event, so that a process can be profiled with the JDK's
+ *  own tools; those cost next to nothing unless a recording is running.
+ *  A command run with --profile before its name, or with the environment
+ *  variable GITLET_PROFILE set to anything but 0, ends by printing them
+ *  to standard error. Phases may nest: writing a blob includes hashing
+ *  it, so their times are not to be added.
+ *  @author Saksham Agarwal
+ */
+class Profile {
+
+    /** The parts of a command that are timed. */
+    enum Phase {
+        READ_OBJECTS("read objects"),
+        WRITE_OBJECTS("write objects"),
+        HASH("hash files"),
+        LIST("list directories"),
+        INDEX("read and write index"),
+        SYNC("sync to disk");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /** The work counted. */
+    enum Counter {
+        OBJECTS_READ("objects read"),
+        OBJECTS_WRITTEN("objects written"),
+        BYTES_HASHED("bytes hashed"),
+        FILES_STATED("files stat'd"),
+        CACHE_HITS("cache hits"),
+        CACHE_MISSES("cache misses"),
+        BLOBS_FETCHED("blobs fetched");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    /** True if the environment asks for every command to be reported. */
+    private static final boolean ENV = System.getenv("GITLET_PROFILE") != null
+            && !System.getenv("GITLET_PROFILE").equals("0");
+
+    /** Total time and number of timings of each phase, and the counts of
+     *  each counter, since the command began. They are added to by many
+     *  threads at once, as add and checkout run, so each is atomic. */
+    private static final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+    private static final AtomicLongArray timings = new AtomicLongArray(Phase.values().length);
+    private static final AtomicLongArray counts = new AtomicLongArray(Counter.values().length);
+    /** The event of the command being run, and when it began. */
+    private static CommandEvent command;
+    private static long start;
+    /** True if the command being run is to be reported. */
+    private static boolean report;
+
+    /** Start measuring a command, which is to be reported if REPORT or if
+     *  the environment asks for it. */
+    static void begin(boolean report) {
+        Profile.report = report || ENV;
+        for (int i = 0; i < nanos.length(); i++) {
+            nanos.set(i, 0);
+            timings.set(i, 0);
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        command = new CommandEvent();
+        command.begin();
+        start = System.nanoTime();
+    }
+
+    /** Finish measuring command NAME: emit its event and, if it is to be
+     *  reported, print its measurements to OUT. */
+    static void end(String name, PrintStream out) {
+        long total = System.nanoTime() - start;
+        if (command != null) {
+            command.command = name;
+            command.objectsRead = counts.get(Counter.OBJECTS_READ.ordinal());
+            command.objectsWritten = counts.get(Counter.OBJECTS_WRITTEN.ordinal());
+            command.bytesHashed = counts.get(Counter.BYTES_HASHED.ordinal());
+            command.filesStated = counts.get(Counter.FILES_STATED.ordinal());
+            command.cacheHits = counts.get(Counter.CACHE_HITS.ordinal());
+            command.cacheMisses = counts.get(Counter.CACHE_MISSES.ordinal());
+            command.blobsFetched = counts.get(Counter.BLOBS_FETCHED.ordinal());
+            command.commit();
+            command = null;
+        }
+        if (!report) {
+            return;
+        }
+        out.printf("=== Profile of %s ===%n", name);
+        out.printf("%-22s %10.3f ms%n", "total", millis(total));
+        for (Phase phase : Phase.values()) {
+            if (timings.get(phase.ordinal()) > 0) {
+                out.printf("%-22s %10.3f ms %10d times%n", phase.label,
+                        millis(nanos.get(phase.ordinal())), timings.get(phase.ordinal()));
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            out.printf("%-22s %10d%n", counter.label, counts.get(counter.ordinal()));
+        }
+        report = false;
+    }
+
+    /** Add N to COUNTER. */
+    static void count(Counter counter, long n) {
+        counts.addAndGet(counter.ordinal(), n);
+    }
+
+    /** Start timing PHASE, until the Timer returned is closed. */
+    static Timer time(Phase phase) {
+        return new Timer(phase);
+    }
+
+    private static double millis(long nanoseconds) {
+        return nanoseconds / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /** A timing of a phase, to be closed when it ends. */
+    static class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final long begin = System.nanoTime();
+        private final PhaseEvent event = new PhaseEvent();
+
+        private Timer(Phase phase) {
+            this.phase = phase;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            nanos.addAndGet(phase.ordinal(), System.nanoTime() - begin);
+            timings.incrementAndGet(phase.ordinal());
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.label;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("gitlet.Phase")
+    @Label("Gitlet Phase")
+    @Category("Gitlet")
+    @Description("A timed part of a Gitlet command.")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("gitlet.Command")
+    @Label("Gitlet Command")
+    @Category("Gitlet")
+    @Description("A Gitlet command, with counts of the work it did.")
+    static class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+        @Label("Objects Read")
+        long objectsRead;
+        @Label("Objects Written")
+        long objectsWritten;
+        @Label("Bytes Hashed")
+        @DataAmount
+        long bytesHashed;
+        @Label("Files Stat'd")
+        long filesStated;
+        @Label("Cache Hits")
+        long cacheHits;
+        @Label("Cache Misses")
+        long cacheMisses;
+        @Label("Blobs Fetched")
+        long blobsFetched;
+    }
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+import static gitlet.Utils.*;
+
+/** The object database of a partial clone: one that holds every commit
+ *  and tree of its history but only the blobs it has made itself, and
+ *  fetches the others from the remote that promised them, named in its
+ *  Repository.PROMISOR file, when they are first read.
+ *
+ *  Blobs fetched are kept loose, deflated, in Repository.PROMISED, apart
+ *  from the objects of the repository, which never counts them as its
+ *  own: they can always be fetched again. That directory is a cache of
+ *  at most CACHE_LIMIT bytes, from which the blobs least recently read
+ *  are deleted once it grows larger. Commands that know the blobs they
+ *  will read, as checkout, reset and merge do, fetch them all at once
+ *  with prefetch, rather than one at a time.
+ *  @author Saksham Agarwal
+ */
+class Promisor implements ObjectDatabase {
+
+    /** Bound on the total size of the fetched blobs kept. */
+    static final long CACHE_LIMIT = 256L << 20;
+
+    /** The objects of the repository itself. */
+    private final ObjectDatabase objects;
+    /** The gitlet directory of the repository, and the name of its
+     *  promisor remote. */
+    private final File dir;
+    private final String remote;
+    /** The directory of the fetched blobs. */
+    private final File cache;
+    /** The objects of the remote, opened on first fetch. */
+    private ObjectDatabase promised;
+
+    private Promisor(ObjectDatabase objects, File dir, String remote) {
+        this.objects = objects;
+        this.dir = dir;
+        this.remote = remote;
+        cache = join(dir, Repository.PROMISED.getName());
+    }
+
+    /** Return the object database of the repository whose gitlet
+     *  directory is DIR: its ObjectStore, read through a Promisor if it
+     *  is a partial clone. */
+    static ObjectDatabase open(File dir) {
+        ObjectStore store = new ObjectStore(dir);
+        String remote = remote(dir);
+        return remote == null ? store : new Promisor(store, dir, remote);
+    }
+
+    /** Return the name of the remote that promised the missing blobs of
+     *  the repository whose gitlet directory is DIR, or null if it is not
+     *  a partial clone. */
+    static String remote(File dir) {
+        File file = join(dir, Repository.PROMISOR.getName());
+        return file.isFile() ? readContentsAsString(file) : null;
+    }
+
+    public Commit readCommit(String id) {
+        return objects.readCommit(id);
+    }
+
+    public void writeCommit(Commit commit) {
+        objects.writeCommit(commit);
+    }
+
+    public boolean hasCommit(String id) {
+        return objects.hasCommit(id);
+    }
+
+    public List<String> commitIds() {
+        return objects.commitIds();
+    }
+
+    public List<String> treeIds() {
+        return objects.treeIds();
+    }
+
+    /** Return the IDs of the blobs of the repository itself, leaving out
+     *  those fetched. */
+    public List<String> blobIds() {
+        return objects.blobIds();
+    }
+
+    public long modified(String id) {
+        return objects.modified(id);
+    }
+
+    public void prune(Predicate<String> keep) {
+        objects.prune(keep);
+    }
+
+    public Tree readTree(String id) {
+        return objects.readTree(id);
+    }
+
+    public void writeTree(String id, byte[] contents) {
+        objects.writeTree(id, contents);
+    }
+
+    public boolean hasBlob(String id) {
+        return objects.hasBlob(id) || ObjectStore.looseFile(cache, id).isFile();
+    }
+
+    /** Return a stream over the contents of blob ID, fetching it first if
+     *  it is missing. A cached blob is touched, to mark it recently
+     *  read. */
+    public InputStream openBlob(String id) {
+        if (objects.hasBlob(id)) {
+            return objects.openBlob(id);
+        }
+        File cached = ObjectStore.looseFile(cache, id);
+        if (!cached.setLastModified(System.currentTimeMillis())) {
+            fetch(List.of(id));
+        }
+        return ObjectStore.openLoose(cached);
+    }
+
+    public String writeBlob(InputStream in) {
+        return objects.writeBlob(in);
+    }
+
+    /** Fetch those of the blobs IDS that are missing, all at once. */
+    public void prefetch(Collection<String> ids) {
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (!hasBlob(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            fetch(missing);
+        }
+    }
+
+    public void repack() {
+        objects.repack();
+    }
+
+    public void reload() {
+        objects.reload();
+    }
+
+    /** Copy the blobs IDS from the promisor remote into the cache, checking
+     *  that each has the contents its ID names, then shrink the cache to
+     *  its bound, keeping them. */
+    private synchronized void fetch(List<String> ids) {
+        if (promised == null) {
+            promised = open(Remote.directory(dir, remote));
+        }
+        for (String id : ids) {
+            File dest = ObjectStore.looseFile(cache, id);
+            if (dest.isFile()) {
+                continue;
+            }
+            dest.getParentFile().mkdirs();
+            MessageDigest md = ObjectStore.sha1Digest();
+            try (InputStream in = promised.openBlob(id)) {
+                Path tmp = Files.createTempFile(dir.toPath(), "blob", null);
+                try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmp.toFile()), Pack.BUFFER_SIZE))) {
+                    byte[] buf = new byte[Pack.BUFFER_SIZE];
+                    for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                        md.update(buf, 0, n);
+                        out.write(buf, 0, n);
+                    }
+                }
+                if (!Pack.toHex(md.digest()).equals(id)) {
+                    Files.delete(tmp);
+                    throw error("Corrupt blob %s from remote %s.", id, remote);
+                }
+                Files.move(tmp, dest.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw error("Cannot fetch blob %s.", id);
+            }
+            Profile.count(Profile.Counter.BLOBS_FETCHED, 1);
+        }
+        shrink(new LinkedHashSet<>(ids));
+    }
+
+    /** Delete the cached blobs least recently read, other than those of
+     *  KEEP, until the cache holds at most CACHE_LIMIT bytes. */
+    private void shrink(Set<String> keep) {
+        List<File> files = new ArrayList<>();
+        long size = 0;
+        for (String id : ObjectStore.looseIds(cache)) {
+            File file = ObjectStore.looseFile(cache, id);
+            size += file.length();
+            if (!keep.contains(id)) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (int i = 0; size > CACHE_LIMIT && i < files.size(); i++) {
+            size -= files.get(i).length();
+            files.get(i).delete();
+            files.get(i).getParentFile().delete();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps, kept in Repository.BITMAPS: for selected
+ *  commits, the set of commit graph positions of the commit and all its
+ *  ancestors. The commits selected are the branch tips and every
+ *  SPACING'th commit of the graph, so that the ancestry of any commit is
+ *  found by walking back only to the nearest selected commits and taking
+ *  the union of their bitmaps with the commits walked. Whether one commit
+ *  is an ancestor of another, and how many commits each of two has that
+ *  the other lacks, are then answered by set operations on two bitmaps.
+ *  Once more than TAIL_LIMIT commits, or an eighth of those covered, have
+ *  been added to the graph since the bitmaps were built, bitmaps are
+ *  built for the new selected commits and the current tips.
+ *
+ *  The file is the magic "GCBM", a version, the number of commits of the
+ *  graph when it was built and the checksum of their IDs, and the number
+ *  of bitmaps, then the position and Bitmap of each selected commit.
+ *  Bitmaps of another version, or built from a graph whose first commits
+ *  differ from those of the current one, as after the graph is rebuilt,
+ *  are ignored and built again.
+ *  @author Saksham Agarwal
+ */
+class Reachability {
+
+    private static final int MAGIC = 0x4743424d;
+    private static final int VERSION = 2;
+    /** Distance between the positions of the commits selected besides the
+     *  branch tips. */
+    private static final int SPACING = 512;
+    /** Least number of commits added since the bitmaps were built before
+     *  they are built again. */
+    private static final int TAIL_LIMIT = 256;
+
+    /** The bitmaps of the repository, once loaded. */
+    private static Reachability loaded;
+
+    private final CommitGraph graph = CommitGraph.load();
+    /** Number of commits in the graph when the bitmaps were built. */
+    private int covered;
+    /** The bitmaps of the selected commits, by position. */
+    private final Map<Integer, Bitmap> bitmaps = new HashMap<>();
+
+    /** Return the bitmaps of the repository, reading them on first use and
+     *  building them if too many commits have been added since they
+     *  were. */
+    static Reachability load() {
+        if (loaded == null) {
+            loaded = new Reachability();
+            loaded.read();
+            int added = loaded.graph.size() - loaded.covered;
+            if (added > Math.max(TAIL_LIMIT, loaded.covered / 8)) {
+                loaded.build();
+            }
+        }
+        return loaded;
+    }
+
+    /** Forget the bitmaps read so far, so that they are read again on
+     *  next use. */
+    static void reload() {
+        loaded = null;
+    }
+
+    /** Return true if the commit at position ANCESTOR is the commit at
+     *  position COMMIT or one of its ancestors. */
+    boolean isAncestor(int ancestor, int commit) {
+        return reach(commit).contains(ancestor);
+    }
+
+    /** Return the numbers of commits reachable from the commit at A but
+     *  not from the commit at B, and from B but not from A. */
+    int[] aheadBehind(int a, int b) {
+        Bitmap fromA = reach(a);
+        Bitmap fromB = reach(b);
+        return new int[] {fromA.andNot(fromB).cardinality(), fromB.andNot(fromA).cardinality()};
+    }
+
+    /** Return the positions of the commit at POS and its ancestors. The
+     *  graph is walked back from POS, stopping at commits that have a
+     *  bitmap, whose bitmaps are added to the commits walked. */
+    Bitmap reach(int pos) {
+        Bitmap stored = bitmaps.get(pos);
+        if (stored != null) {
+            return stored;
+        }
+        Bitmap result = Bitmap.EMPTY;
+        BitSet walked = new BitSet();
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(pos);
+        while (!pending.isEmpty()) {
+            int next = pending.pop();
+            if (walked.get(next) || result.contains(next)) {
+                continue;
+            }
+            stored = bitmaps.get(next);
+            if (stored != null) {
+                result = result.or(stored);
+                continue;
+            }
+            walked.set(next);
+            for (int which = 0; which < 2; which++) {
+                int parent = graph.parent(next, which);
+                if (parent != CommitGraph.NONE) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return result.or(Bitmap.of(walked));
+    }
+
+    private void read() {
+        if (!Repository.BITMAPS.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(Repository.BITMAPS), Pack.BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw error("Corrupt reachability bitmaps.");
+            }
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            long checksum = in.readLong();
+            if (count > graph.size() || checksum != graph.checksum(count)) {
+                return;
+            }
+            covered = count;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                int pos = in.readInt();
+                bitmaps.put(pos, Bitmap.read(in));
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read reachability bitmaps.");
+        }
+    }
+
+    /** Build bitmaps for the selected commits added since the bitmaps were
+     *  last built and for the branch tips, in order of position so that
+     *  each walk stops at the bitmaps built before it, drop those of
+     *  former tips, and write them all. */
+    private void build() {
+        TreeMap<Integer, Bitmap> selected = new TreeMap<>();
+        for (Map.Entry<Integer, Bitmap> entry : bitmaps.entrySet()) {
+            if (isSpaced(entry.getKey())) {
+                selected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (int pos = covered; pos < graph.size(); pos++) {
+            if (isSpaced(pos)) {
+                selected.put(pos, null);
+            }
+        }
+        Refs refs = Refs.load();
+        for (String branch : refs.branches()) {
+            selected.putIfAbsent(graph.position(refs.branch(branch)), null);
+        }
+        for (Map.Entry<Integer, Bitmap> entry : selected.entrySet()) {
+            if (entry.getValue() == null) {
+                Bitmap bitmap = reach(entry.getKey());
+                bitmaps.put(entry.getKey(), bitmap);
+                entry.setValue(bitmap);
+            }
+        }
+        bitmaps.keySet().retainAll(selected.keySet());
+        covered = graph.size();
+        write();
+    }
+
+    private static boolean isSpaced(int pos) {
+        return (pos + 1) % SPACING == 0;
+    }
+
+    private void write() {
+        File tmp = Repository.tempFile("bitmaps");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), Pack.BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(covered);
+            out.writeLong(graph.checksum(covered));
+            out.writeInt(bitmaps.size());
+            for (Map.Entry<Integer, Bitmap> entry : new TreeMap<>(bitmaps).entrySet()) {
+                out.writeInt(entry.getKey());
+                entry.getValue().write(out);
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write reachability bitmaps.");
+        }
+        try {
+            Files.move(tmp.toPath(), Repository.BITMAPS.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Cannot write reachability bitmaps.");
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import static gitlet.Utils.*;
+
+/** The references of the repository: the head commit, the current branch
+ *  and the tip of every branch, kept in Repository.HEAD,
+ *  Repository.CUR_BRANCH and a file per branch in Repository.BRANCHES.
+ *  The branches fetched from a remote, named REMOTE/BRANCH, are kept in a
+ *  subdirectory of it named after the remote.
+ *  They are read once, changed in memory and written back by save, which
+ *  during a batch of operations leaves them in memory until it ends. Those
+ *  that changed are written together through the Journal, so that a crash
+ *  leaves either all of them changed or none.
+ *  @author Saksham Agarwal
+ */
+class Refs {
+
+    /** Time to wait before reading references again that were being
+     *  changed. */
+    private static final long RETRY_NANOS = 1_000_000;
+
+    /** The references of the repository, once loaded. */
+    private static Refs loaded;
+
+    private String head;
+    private String current;
+    /** The tip of every branch, by name. */
+    private final TreeMap<String, String> branches = new TreeMap<>();
+    /** True if the head or the current branch changed since they were
+     *  read. */
+    private boolean headChanged;
+    private boolean currentChanged;
+    /** Names of the branches changed or removed since they were read. */
+    private final Set<String> changed = new HashSet<>();
+
+    /** Return the references of the repository, reading them on first
+     *  use. */
+    static Refs load() {
+        if (loaded == null) {
+            loaded = new Refs();
+            loaded.read();
+        }
+        return loaded;
+    }
+
+    /** Forget the references read so far, so that they are read again on
+     *  next use. */
+    static void reload() {
+        loaded = null;
+    }
+
+    /** Read the references as they stood between two changes to them,
+     *  without taking the references lock. The Journal's sequence number
+     *  is odd while they are being replaced, and is read before and after:
+     *  if it was odd, or changed, they are read again. A change left half
+     *  done by a crash is first finished or discarded, unless another
+     *  process holds the lock and may still be making it. */
+    private void read() {
+        while (true) {
+            long sequence = Journal.sequence();
+            if (sequence % 2 != 0 || Repository.JOURNAL.isFile()) {
+                try (Lock lock = Lock.tryAcquire(Repository.REFS_LOCK)) {
+                    if (lock != null) {
+                        Journal.recover();
+                        sequence = Journal.sequence();
+                    }
+                }
+            }
+            if (sequence % 2 == 0 && readFiles() && Journal.sequence() == sequence) {
+                return;
+            }
+            LockSupport.parkNanos(RETRY_NANOS);
+        }
+    }
+
+    /** Read the reference files, returning false if one vanished while
+     *  they were read. */
+    private boolean readFiles() {
+        head = readRef(Repository.HEAD);
+        current = readRef(Repository.CUR_BRANCH);
+        branches.clear();
+        if (!readBranches(Repository.BRANCHES, "")) {
+            return false;
+        }
+        File[] remotes = Repository.BRANCHES.listFiles(File::isDirectory);
+        if (remotes != null) {
+            for (File remote : remotes) {
+                if (!readBranches(remote, remote.getName() + "/")) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Read the branch files in DIR, naming each branch by PREFIX and its
+     *  file name, and return false if one vanished while they were read. */
+    private boolean readBranches(File dir, String prefix) {
+        List<String> names = plainFilenamesIn(dir);
+        if (names != null) {
+            for (String name : names) {
+                String tip = readRef(join(dir, name));
+                if (tip == null) {
+                    return false;
+                }
+                branches.put(prefix + name, tip);
+            }
+        }
+        return true;
+    }
+
+    /** Return the contents of reference file FILE, or null if there is
+     *  none. */
+    private static String readRef(File file) {
+        try {
+            return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("Cannot read %s.", file.getName());
+        }
+    }
+
+    /** Write the references that changed back to their files, all at
+     *  once. */
+    void save() {
+        if (Repository.batching()) {
+            return;
+        }
+        Map<String, String> updates = new LinkedHashMap<>();
+        if (currentChanged) {
+            updates.put(Repository.CUR_BRANCH.getName(), current);
+        }
+        if (headChanged) {
+            updates.put(Repository.HEAD.getName(), head);
+        }
+        for (String name : changed) {
+            updates.put(Repository.BRANCHES.getName() + "/" + name, branches.get(name));
+        }
+        Journal.commit(updates);
+        headChanged = false;
+        currentChanged = false;
+        changed.clear();
+    }
+
+    /** Return the ID of the head commit. */
+    String head() {
+        return head;
+    }
+
+    String currentBranch() {
+        return current;
+    }
+
+    /** Return the tip of branch NAME, or null if there is no such
+     *  branch. */
+    String branch(String name) {
+        return branches.get(name);
+    }
+
+    /** Return the names of the branches in order. */
+    List<String> branches() {
+        return new ArrayList<>(branches.keySet());
+    }
+
+    void setHead(String id) {
+        head = id;
+        headChanged = true;
+    }
+
+    void setCurrentBranch(String name) {
+        current = name;
+        currentChanged = true;
+    }
+
+    void setBranch(String name, String id) {
+        branches.put(name, id);
+        changed.add(name);
+    }
+
+    void removeBranch(String name) {
+        branches.remove(name);
+        changed.add(name);
+    }
+
+    /** Make commit ID the head and the tip of the current branch. */
+    void advance(String id) {
+        setHead(id);
+        setBranch(current, id);
+    }
+}
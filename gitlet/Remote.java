@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static gitlet.Utils.*;
+
+/** Another repository on the local file system, from which commits are
+ *  sent to the repository held by Repository. The remote is read through
+ *  its own commit graph, object store and branch files, never through
+ *  Repository, so that both can be open at once; pushing is fetching with
+ *  the two the other way round.
+ *
+ *  A transfer sends only the history the receiving repository lacks. The
+ *  receiver first offers the commits it has, walking back by date from
+ *  its branch tips in rounds of growing size, and the sender acknowledges
+ *  those it has too. Each commit acknowledged is shared with all its
+ *  ancestors, so the receiver stops offering them, and the offers end
+ *  when nothing but shared history is left to walk, or after IN_VAIN
+ *  offers in a row were not acknowledged. The sender then walks back from
+ *  the commit wanted, stopping at the shared commits, and writes the
+ *  commits it reaches, with the trees and blobs that the shared commits
+ *  just below them lack, as one pack into the receiver's pack directory.
+ *  The cost of a transfer thus grows with the history sent, not with the
+ *  whole history of either repository.
+ *
+ *  Remotes are named in Repository.REMOTES, by a file per remote holding
+ *  the path of its gitlet directory.
+ *  @author Saksham Agarwal
+ */
+class Remote {
+
+    /** Number of commits offered in the first round of negotiation, and
+     *  the most offered in any one round. */
+    private static final int FIRST_ROUND = 16;
+    private static final int MAX_ROUND = 1024;
+    /** Number of offers in a row not acknowledged, once one has been,
+     *  after which the receiver stops offering. */
+    private static final int IN_VAIN = 256;
+
+    /** The gitlet directory of the remote. */
+    private final File dir;
+    private final CommitGraph graph;
+    private final ObjectDatabase objects;
+
+    /** The repository whose gitlet directory is DIR. */
+    Remote(File dir) {
+        this.dir = dir;
+        graph = CommitGraph.open(dir);
+        objects = Promisor.open(dir);
+    }
+
+    /** Return the gitlet directory of the remote NAME of the repository,
+     *  failing if there is no such remote or it does not exist. */
+    static File directory(String name) {
+        return directory(Repository.GITLET_DIR, name);
+    }
+
+    /** Return the gitlet directory of the remote NAME of the repository
+     *  whose gitlet directory is HOME. */
+    static File directory(File home, String name) {
+        File file = join(home, Repository.REMOTES.getName(), name);
+        if (!file.isFile()) {
+            throw error("A remote with that name does not exist.");
+        }
+        File dir = new File(readContentsAsString(file));
+        if (!dir.isAbsolute()) {
+            dir = join(home.getAbsoluteFile().getParentFile(), dir.getPath());
+        }
+        if (!dir.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        return dir;
+    }
+
+    /** Name the repository whose gitlet directory is at PATH, relative to
+     *  the working directory unless absolute, as remote NAME. */
+    static void add(String name, String path) {
+        File file = join(Repository.REMOTES, name);
+        if (file.exists()) {
+            throw error("A remote with that name already exists.");
+        }
+        Repository.REMOTES.mkdir();
+        writeContents(file, path.replace("/", File.separator));
+    }
+
+    static void remove(String name) {
+        if (name.equals(Promisor.remote(Repository.GITLET_DIR))) {
+            throw error("Cannot remove the remote of a partial clone.");
+        }
+        if (!join(Repository.REMOTES, name).delete()) {
+            throw error("A remote with that name does not exist.");
+        }
+    }
+
+    /** Return the names of the branches of this repository, leaving out
+     *  those fetched from its own remotes. */
+    List<String> branches() {
+        return plainFilenamesIn(join(dir, Repository.BRANCHES.getName()));
+    }
+
+    String currentBranch() {
+        return readContentsAsString(join(dir, Repository.CUR_BRANCH.getName()));
+    }
+
+    /** Return the tip of branch NAME of this repository, or null if it has
+     *  no such branch. */
+    String branch(String name) {
+        File file = join(dir, Repository.BRANCHES.getName(), name);
+        return file.isFile() ? readContentsAsString(file) : null;
+    }
+
+    /** Return true if commit ANCESTOR, which need not be in this
+     *  repository, is commit COMMIT of this repository or one of its
+     *  ancestors. */
+    boolean isAncestor(String ancestor, String commit) {
+        int a = graph.find(ancestor);
+        return a != CommitGraph.NONE
+                && graph.mergeBases(a, graph.find(commit)).equals(List.of(a));
+    }
+
+    /** Return those of the commits OFFERED that this repository has. */
+    List<String> acknowledge(List<String> offered) {
+        List<String> shared = new ArrayList<>();
+        for (String id : offered) {
+            if (graph.find(id) != CommitGraph.NONE) {
+                shared.add(id);
+            }
+        }
+        return shared;
+    }
+
+    /** Bring commit WANT of this repository and its history into the
+     *  repository held by Repository, which holds its references lock,
+     *  with their blobs only if BLOBS. Return the number of commits
+     *  sent. */
+    int transfer(String want, boolean blobs) {
+        CommitGraph local = CommitGraph.load();
+        if (local.find(want) != CommitGraph.NONE) {
+            return 0;
+        }
+        List<String> commits = pack(want, negotiate(local), blobs);
+        Repository.objects().reload();
+        List<Commit> received = new ArrayList<>();
+        for (String id : commits) {
+            received.add(Repository.objects().readCommit(id));
+        }
+        Repository.added(received);
+        return commits.size();
+    }
+
+    /** Offer the commits of the repository held by Repository, whose graph
+     *  is LOCAL, to this one, and return those found shared. */
+    private List<String> negotiate(CommitGraph local) {
+        List<Integer> tips = new ArrayList<>();
+        for (String branch : Refs.load().branches()) {
+            tips.add(local.position(Refs.load().branch(branch)));
+        }
+        History offers = new History(local, tips, List.of(), History.Order.DATE);
+        List<String> shared = new ArrayList<>();
+        int round = FIRST_ROUND;
+        int inVain = 0;
+        while (offers.hasNext() && (shared.isEmpty() || inVain < IN_VAIN)) {
+            List<String> offered = new ArrayList<>();
+            while (offered.size() < round && offers.hasNext()) {
+                offered.add(local.id(offers.next()));
+            }
+            List<String> acknowledged = acknowledge(offered);
+            for (String id : acknowledged) {
+                offers.hide(local.position(id));
+            }
+            shared.addAll(acknowledged);
+            inVain = acknowledged.isEmpty() ? inVain + offered.size() : 0;
+            round = Math.min(2 * round, MAX_ROUND);
+        }
+        return shared;
+    }
+
+    /** Write commit WANT and the ancestors of it that are not ancestors of
+     *  the commits SHARED, with their trees and, if BLOBS, their blobs, as
+     *  one pack into the pack directory of the repository held by
+     *  Repository. Return the IDs of the commits written, each after its
+     *  parents. */
+    private List<String> pack(String want, List<String> shared, boolean blobs) {
+        List<Integer> hidden = new ArrayList<>();
+        for (String id : shared) {
+            hidden.add(graph.find(id));
+        }
+        History walk = new History(graph, List.of(graph.find(want)), hidden,
+                History.Order.TOPO);
+        List<Integer> sent = new ArrayList<>();
+        while (walk.hasNext()) {
+            sent.add(walk.next());
+        }
+        Collections.reverse(sent);
+        if (sent.isEmpty()) {
+            return List.of();
+        }
+        Set<Integer> sending = new HashSet<>(sent);
+        Set<String> present = new HashSet<>();
+        for (int pos : sent) {
+            for (int which = 0; which < 2; which++) {
+                int parent = graph.parent(pos, which);
+                if (parent != CommitGraph.NONE && !sending.contains(parent)) {
+                    mark(objects.readCommit(graph.id(parent)).getTreeID(), present);
+                }
+            }
+        }
+        Repository.PACKS.mkdir();
+        Pack.Writer writer = new Pack.Writer(Repository.PACKS);
+        List<String> ids = new ArrayList<>();
+        for (int pos : sent) {
+            Commit c = objects.readCommit(graph.id(pos));
+            if (c.hasLegacyFiles()) {
+                throw error("The remote repository must be migrated first.");
+            }
+            writer.add(c.id(), Pack.COMMIT, c.encode());
+            packTree(writer, c.getTreeID(), present, blobs);
+            ids.add(c.id());
+        }
+        writer.finish();
+        return ids;
+    }
+
+    /** Add tree ID and all it holds to PRESENT, unless it is there. */
+    private void mark(String id, Set<String> present) {
+        if (id == null || !present.add(id)) {
+            return;
+        }
+        Tree tree = objects.readTree(id);
+        for (Map.Entry<String, String> entry : tree.entries().entrySet()) {
+            if (tree.isTree(entry.getKey())) {
+                mark(entry.getValue(), present);
+            } else {
+                present.add(entry.getValue());
+            }
+        }
+    }
+
+    /** Add tree ID and all it holds to WRITER, except what is in PRESENT
+     *  and, unless BLOBS, the blobs, adding what it adds to PRESENT. */
+    private void packTree(Pack.Writer writer, String id, Set<String> present,
+                          boolean blobs) {
+        if (id == null || !present.add(id)) {
+            return;
+        }
+        Tree tree = objects.readTree(id);
+        writer.add(id, Pack.TREE, tree.serialize());
+        for (Map.Entry<String, String> entry : tree.entries().entrySet()) {
+            if (tree.isTree(entry.getKey())) {
+                packTree(writer, entry.getValue(), present, blobs);
+            } else if (blobs && present.add(entry.getValue())) {
+                try (InputStream in = objects.openBlob(entry.getValue())) {
+                    writer.add(entry.getValue(), Pack.BLOB, in);
+                } catch (IOException excp) {
+                    throw error("Cannot read blob %s.", entry.getValue());
+                }
+            }
+        }
+    }
+}
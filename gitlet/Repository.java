@@ -1,12 +1,30 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.Date;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import static gitlet.Utils.*;
 
 
@@ -22,138 +40,419 @@ public class Repository {
      * variable is used. We've provided two examples for you.
      */
 
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** The working directory of the repository operated on: the current
+     *  directory, unless a Gitlet has pointed it elsewhere. */
+    static File CWD;
     /** The .gitlet directory. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
-    public static final File STAGING_ADD = join(GITLET_DIR, ".staging");
-    public static final File STAGING_REMOVE = join(GITLET_DIR, ".remove");
-    public static final File BLOBS = join(GITLET_DIR, ".blobs");
-    public static final File COMMITS = join(GITLET_DIR, ".commits");
-    public static final File HEAD = join(GITLET_DIR, "head");
-    public static final File BRANCHES = join(GITLET_DIR, ".branches");
-    public static final File CUR_BRANCH = join(GITLET_DIR, "curBranch");
+    static File GITLET_DIR;
+    static File INDEX;
+    /** The commit graph, holding the parents of every commit. */
+    static File COMMIT_GRAPH;
+    /** The sorted index of the IDs of the commits of the commit graph. */
+    static File COMMIT_IDS;
+    /** The commit catalog and its trigram index. */
+    static File CATALOG;
+    static File CATALOG_INDEX;
+    /** The reachability bitmaps of selected commits. */
+    static File BITMAPS;
+    /** The write-ahead journal of changes to the references, and their
+     *  sequence number. */
+    static File JOURNAL;
+    static File REFS_SEQUENCE;
+    /** The locks of the processes changing the index and the references. */
+    static File INDEX_LOCK;
+    static File REFS_LOCK;
+    /** The socket of a running daemon. */
+    static File DAEMON_SOCKET;
+    /** The directory naming the remotes. */
+    static File REMOTES;
+    /** In a partial clone, the name of the remote that promised its
+     *  missing blobs, and the directory of those fetched from it. */
+    static File PROMISOR;
+    static File PROMISED;
+    static File BLOBS;
+    static File COMMITS;
+    static File TREES;
+    static File PACKS;
+    static File HEAD;
+    static File BRANCHES;
+    static File CUR_BRANCH;
+    static File FORMAT;
+
+    /** The object database of the repository, opened on first use. */
+    private static ObjectDatabase objects;
+    /** The commits made during the running batch of operations and not
+     *  yet added to the commit graph and catalog, or null if no batch is
+     *  running. */
+    private static List<Commit> batch;
+    /** Stamp of the gitlet directory when what this process has read of
+     *  the repository was last known to be current, or null if this
+     *  process has not yet run a command that it may need to check. */
+    private static String stamp;
+
+    static {
+        setDirectory(new File(System.getProperty("user.dir")));
+    }
+
+    /** Operate on the repository whose working directory is DIR, an
+     *  absolute path, forgetting everything read from the one before. */
+    static void setDirectory(File dir) {
+        CWD = dir;
+        GITLET_DIR = join(CWD, ".gitlet");
+        INDEX = join(GITLET_DIR, "index");
+        COMMIT_GRAPH = join(GITLET_DIR, "commit-graph");
+        COMMIT_IDS = join(GITLET_DIR, "commit-ids");
+        CATALOG = join(GITLET_DIR, "catalog");
+        CATALOG_INDEX = join(GITLET_DIR, "catalog-index");
+        BITMAPS = join(GITLET_DIR, "bitmaps");
+        JOURNAL = join(GITLET_DIR, "journal");
+        REFS_SEQUENCE = join(GITLET_DIR, "refs-sequence");
+        INDEX_LOCK = join(GITLET_DIR, "index.lock");
+        REFS_LOCK = join(GITLET_DIR, "refs.lock");
+        DAEMON_SOCKET = join(GITLET_DIR, "daemon.sock");
+        REMOTES = join(GITLET_DIR, "remotes");
+        PROMISOR = join(GITLET_DIR, "promisor");
+        PROMISED = join(GITLET_DIR, ".promised");
+        BLOBS = join(GITLET_DIR, ".blobs");
+        COMMITS = join(GITLET_DIR, ".commits");
+        TREES = join(GITLET_DIR, ".trees");
+        PACKS = join(GITLET_DIR, ".packs");
+        HEAD = join(GITLET_DIR, "head");
+        BRANCHES = join(GITLET_DIR, ".branches");
+        CUR_BRANCH = join(GITLET_DIR, "curBranch");
+        FORMAT = join(GITLET_DIR, "format");
+        stamp = null;
+        reload();
+    }
+
+    /** Return the object database through which every commit, tree and
+     *  blob of the repository is read and written. */
+    static ObjectDatabase objects() {
+        if (objects == null) {
+            objects = new ObjectCache(Promisor.open(GITLET_DIR), ObjectCache.CAPACITY);
+        }
+        return objects;
+    }
+
+    /** Return a new empty file in the gitlet directory, whose name begins
+     *  with PREFIX, to be written and then renamed over the file it
+     *  replaces. Its name is unique, so that processes replacing the same
+     *  file at once never write into each other's. */
+    static File tempFile(String prefix) {
+        try {
+            return Files.createTempFile(GITLET_DIR.toPath(), prefix, ".tmp").toFile();
+        } catch (IOException excp) {
+            throw error("Cannot create temporary file.");
+        }
+    }
+
+    /** Forget every object, index and graph read so far, so that changes
+     *  made to the repository by another process are seen. */
+    static void reload() {
+        objects = null;
+        Index.reload();
+        Refs.reload();
+        CommitGraph.reload();
+        Reachability.reload();
+    }
+
+    /** Forget everything read of the repository if another process has
+     *  changed it since it was last known to be current. A process that
+     *  runs many operations, as the daemon and a Gitlet do, calls this
+     *  before each, and again once an operation that changes the
+     *  repository holds its locks, since another process may have changed
+     *  it in between. */
+    static void refresh() {
+        if (batching()) {
+            return;
+        }
+        String now = stamp();
+        if (!now.equals(stamp)) {
+            reload();
+        }
+        stamp = now;
+    }
+
+    /** Call refresh if this process has run an operation before, as
+     *  Main does for a command that changes the repository once it holds
+     *  its locks. A process that runs one command has read nothing before
+     *  taking them. */
+    static void recheck() {
+        if (stamp != null) {
+            refresh();
+        }
+    }
+
+    /** Take the repository as it now stands to be what this process has
+     *  read, after an operation of its own has changed it while holding
+     *  its locks, so that the changes it made itself are not mistaken
+     *  for another process's. */
+    static void settle() {
+        if (stamp != null && !batching()) {
+            stamp = stamp();
+        }
+    }
+
+    /** Return a summary of the names, sizes, modification times and file
+     *  keys of the files directly in the gitlet directory and in its
+     *  branch and pack directories, which changes whenever another
+     *  process changes the repository. Objects are never changed once
+     *  written, so the object directories themselves are left out. */
+    private static String stamp() {
+        StringBuilder stamp = new StringBuilder();
+        for (File dir : new File[] {GITLET_DIR, BRANCHES, PACKS}) {
+            String[] names = dir.list();
+            if (names == null) {
+                continue;
+            }
+            Arrays.sort(names);
+            for (String name : names) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            join(dir, name).toPath(), BasicFileAttributes.class);
+                    stamp.append(name).append(' ').append(attrs.size()).append(' ')
+                            .append(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+                            .append(' ').append(attrs.fileKey()).append('\n');
+                } catch (IOException excp) {
+                    stamp.append(name).append('\n');
+                }
+            }
+        }
+        return stamp.toString();
+    }
+
+    /** Return true if a batch of operations is running. */
+    static boolean batching() {
+        return batch != null;
+    }
+
+    /** Start a batch of operations, during which the index, the references
+     *  and the commits made are kept in memory rather than written by each
+     *  operation. */
+    static void beginBatch() {
+        batch = new ArrayList<>();
+    }
+
+    /** End the running batch, writing what it kept in memory. */
+    static void endBatch() {
+        addCommits();
+        batch = null;
+        Refs.load().save();
+        Index.load().save();
+    }
+
+    /** Abandon the running batch, forgetting what it kept in memory. The
+     *  objects it wrote are left, referenced by nothing. */
+    static void abortBatch() {
+        batch = null;
+        reload();
+    }
+
+    /** Add commit C, just made, to the commit graph and catalog or, during
+     *  a batch, keep it until they are next read. */
+    static void added(Commit c) {
+        if (batch != null) {
+            batch.add(c);
+            return;
+        }
+        CommitGraph.load().position(c.id());
+        CommitCatalog.append(List.of(c));
+    }
+
+    /** Add COMMITS, each after its parents, to the commit graph and
+     *  catalog. */
+    static void added(List<Commit> commits) {
+        List<String> ids = new ArrayList<>();
+        for (Commit c : commits) {
+            ids.add(c.id());
+        }
+        CommitGraph.load().append(ids);
+        CommitCatalog.append(commits);
+    }
+
+    /** Add the commits kept by the running batch to the commit graph and
+     *  catalog. */
+    private static void addCommits() {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        added(batch);
+        batch.clear();
+    }
 
     public static void initMethod() {
         if (GITLET_DIR.exists()) {
-            System.out.print("A Gitlet version-control system already ");
-            System.out.println("exists in the current directory.");
-            System.exit(0);
+            throw error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
         }
         GITLET_DIR.mkdir();
-        STAGING_ADD.mkdir();
-        STAGING_REMOVE.mkdir();
         BLOBS.mkdir();
         COMMITS.mkdir();
+        TREES.mkdir();
+        PACKS.mkdir();
         BRANCHES.mkdir();
-        writeContents(CUR_BRANCH, "master");
-        Commit init = new Commit("initial commit", 0, null);
-        writeContents(join(BRANCHES, "master"), init.id());
+        writeContents(FORMAT, Integer.toString(Migration.CURRENT));
+        writeContents(CATALOG, (Object) new byte[0]);
+        Refs.load().setCurrentBranch("master");
+        new Commit("initial commit", 0, null);
     }
 
-    public static void add(String file) {
-        File stageFile = join(STAGING_ADD, file);
-        if (!join(CWD, file).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+    /** Stage the files PATHS. A directory, including ".", stands for all
+     *  the files under it, outside the .gitlet directory. */
+    public static void add(String... paths) {
+        List<String> files = new ArrayList<>();
+        for (String path : paths) {
+            Path relative = CWD.toPath().relativize(CWD.toPath().resolve(path).normalize());
+            File file = join(CWD, relative.toString());
+            if (!file.exists() || relative.startsWith("..")) {
+                throw error("File does not exist.");
+            }
+            String name = relative.toString().replace(File.separatorChar, '/');
+            if (file.isDirectory()) {
+                try (Profile.Timer timer = Profile.time(Profile.Phase.LIST)) {
+                    listFiles(file, name, files);
+                }
+            } else {
+                files.add(name);
+            }
         }
-        if (join(STAGING_REMOVE, file).isFile()) {
-            join(STAGING_REMOVE, file).delete();
+        Index index = Index.load();
+        index.addAll(files);
+        index.save();
+    }
+
+    /** Add the paths of the files under directory DIR, whose path is
+     *  PREFIX, to FILES, leaving out the .gitlet directory. */
+    private static void listFiles(File dir, String prefix, List<String> files) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
         }
-        String headLoc = readContentsAsString(HEAD);
-        Commit head = readObject(join(COMMITS, headLoc), Commit.class);
-        if (head.getFiles() != null && blobHash(file, CWD).equals(head.getFiles().get(file))) {
-            if (stageFile.exists()) {
-                join(STAGING_ADD, file).delete();
+        for (String name : names) {
+            File file = join(dir, name);
+            String path = prefix.isEmpty() ? name : prefix + "/" + name;
+            if (file.equals(GITLET_DIR)) {
+                continue;
+            } else if (file.isDirectory()) {
+                listFiles(file, path, files);
+            } else if (file.isFile()) {
+                files.add(path);
             }
-            System.exit(0);
-        }
-        String contents = readContentsAsString(join(CWD, file));
-        writeContents(stageFile, contents);
-        if (join(STAGING_REMOVE, file).isFile()) {
-            join(STAGING_REMOVE, file).delete();
         }
     }
 
-    public static void commit(String message) {
-        if (plainFilenamesIn(STAGING_ADD).isEmpty() && plainFilenamesIn(STAGING_REMOVE).isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+    /** Commit the staged files with MESSAGE and return the new commit's
+     *  ID. */
+    public static String commit(String message) {
+        if (message.replaceAll(" ", "").equals("")) {
+            throw error("Please enter a commit message.");
         }
-        new Commit(message, readContentsAsString(HEAD));
+        Commit head = objects().readCommit(Refs.load().head());
+        if (Index.load().files().equals(head.getFiles())) {
+            throw error("No changes added to the commit.");
+        }
+        return new Commit(message, head.id()).id();
     }
 
     public static void rm(String file) {
-        List<String> stagedAdd = plainFilenamesIn(STAGING_ADD);
-        boolean a = false;
-        boolean b = false;
-        for (String staged: stagedAdd) {
-            if (staged.equals(file)) {
-                a = true;
-                join(STAGING_ADD, staged).delete();
-                break;
-            }
-        }
-        Commit head = readObject(join(COMMITS, readContentsAsString(HEAD)), Commit.class);
+        Index index = Index.load();
+        Commit head = objects().readCommit(Refs.load().head());
         TreeMap<String, String> filesTracked = head.getFiles();
-        if (filesTracked.containsKey(file)) {
-            b = true;
-            writeContents(join(STAGING_REMOVE, file), filesTracked.get(file));
-            if (join(CWD, file).exists()) {
-                join(CWD, file).delete();
-            }
-        }
+        boolean a = index.contains(file) && !index.blob(file).equals(filesTracked.get(file));
+        boolean b = filesTracked.containsKey(file);
         if (!(a || b)) {
-            System.out.println("No reason to remove the file.");
+            throw error("No reason to remove the file.");
         }
+        index.remove(file);
+        if (b && join(CWD, file).exists()) {
+            join(CWD, file).delete();
+        }
+        index.save();
     }
 
     public static void log() {
-        Commit head = readObject(join(COMMITS, readContentsAsString(HEAD)), Commit.class);
-        while (!head.getMessage().equals("initial commit")) {
-            printLog(head);
-            head = readObject(join(COMMITS, head.getParentID()), Commit.class);
+        log(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, History.Order.FIRST_PARENT);
+    }
+
+    /** Print the head commit and its ancestors in ORDER, leaving out those
+     *  made before time SINCE or after time UNTIL, in milliseconds since
+     *  the epoch, and stopping after LIMIT. Commits are assumed to be made
+     *  after their parents, so a walk by first parent or by date stops at
+     *  the first commit made before SINCE; a topological walk, whose times
+     *  are in no order, goes on to the end. */
+    public static void log(int limit, long since, long until, History.Order order) {
+        CommitGraph graph = CommitGraph.load();
+        History history = new History(graph, graph.position(Refs.load().head()), order);
+        PrintWriter out = stdout();
+        int shown = 0;
+        while (shown < limit && history.hasNext()) {
+            int pos = history.next();
+            long time = graph.time(pos);
+            if (time < since && order != History.Order.TOPO) {
+                break;
+            } else if (time >= since && time <= until) {
+                printLog(out, objects().readCommit(graph.id(pos)));
+                shown++;
+            }
+        }
+        out.flush();
+    }
+
+    /** Pass the head commit and its ancestors along first parents to
+     *  VISIT, newest first. */
+    static void history(Consumer<Commit> visit) {
+        CommitGraph graph = CommitGraph.load();
+        History history = new History(graph, graph.position(Refs.load().head()),
+                History.Order.FIRST_PARENT);
+        while (history.hasNext()) {
+            visit.accept(objects().readCommit(graph.id(history.next())));
         }
-        printLog(head);
     }
 
     public static void globalLog() {
-        List<String> commits = plainFilenamesIn(COMMITS);
-        Commit cur;
-        for (String file: commits) {
-            cur = readObject(join(COMMITS, file), Commit.class);
-            printLog(cur);
-        }
-    }
-
-    public static void find(String commitMessage) {
-        List<String> commits = plainFilenamesIn(COMMITS);
-        Commit cur;
-        boolean found = false;
-        for (String file: commits) {
-            cur = readObject(join(COMMITS, file), Commit.class);
-            if (cur.getMessage().equals(commitMessage)) {
-                found = true;
-                System.out.println(cur.id());
-            }
+        PrintWriter out = stdout();
+        forEachCommit(r -> printLog(out, r.id(), r.parent(), r.parent2(),
+                r.date(), r.message()));
+        out.flush();
+    }
+
+    /** Return a buffered writer to the standard output, to be flushed once
+     *  everything is written to it. */
+    private static PrintWriter stdout() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out),
+                Pack.BUFFER_SIZE));
+    }
+
+    /** Pass the catalog record of every commit ever made to VISIT. */
+    static void forEachCommit(Consumer<CommitCatalog.Record> visit) {
+        addCommits();
+        CommitCatalog.forEach(visit);
+    }
+
+    /** Print the IDs of the commits whose message is COMMITMESSAGE or, if
+     *  SUBSTRING, contains it. */
+    public static void find(String commitMessage, boolean substring) {
+        List<String> found = findCommits(commitMessage, substring);
+        for (String id : found) {
+            System.out.println(id);
         }
-        if (!found) {
+        if (found.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
 
-    public static void status() {
-        List<String> staged = plainFilenamesIn(STAGING_ADD);
-        List<String> branches = plainFilenamesIn(BRANCHES);
-        String curBranch = readContentsAsString(CUR_BRANCH);
-        List<String> cwdFiles = plainFilenamesIn(CWD);
-        File headLoc = join(COMMITS, readContentsAsString(HEAD));
-        Commit head = readObject(headLoc, Commit.class);
-        TreeMap<String, String> trackedFiles = head.getFiles();
+    /** Return the IDs of the commits whose message is MESSAGE or, if
+     *  SUBSTRING, contains it. */
+    static List<String> findCommits(String message, boolean substring) {
+        addCommits();
+        return CommitCatalog.find(message, substring);
+    }
 
+    public static void status() {
+        Gitlet.Status status = currentStatus();
         System.out.println(statusPrint("Branches"));
-        for (String branch:branches) {
-            if (branch.equals(curBranch)) {
+        for (String branch : status.branches()) {
+            if (branch.equals(status.currentBranch())) {
                 System.out.print("*");
             }
             System.out.println(branch);
@@ -161,154 +460,411 @@ public class Repository {
         System.out.println();
 
         System.out.println(statusPrint("Staged Files"));
-        for (String file: staged) {
-            System.out.println(file);
-        }
+        status.staged().forEach(System.out::println);
         System.out.println();
 
-        List<String> removed = plainFilenamesIn(STAGING_REMOVE);
         System.out.println(statusPrint("Removed Files"));
-        for (String file: removed) {
-            System.out.println(file);
-        }
+        status.removed().forEach(System.out::println);
         System.out.println();
 
         System.out.println(statusPrint("Modifications Not Staged For Commit"));
+        TreeMap<String, String> changes = new TreeMap<>();
+        status.modified().forEach(file -> changes.put(file, " (modified)"));
+        status.deleted().forEach(file -> changes.put(file, " (deleted)"));
+        changes.forEach((file, change) -> System.out.println(file + change));
         System.out.println();
 
         System.out.println(statusPrint("Untracked Files"));
+        status.untracked().forEach(System.out::println);
+        System.out.println();
+    }
+
+    /** Return the branches, the staged and removed files, the changes not
+     *  staged and the untracked files of the repository. */
+    static Gitlet.Status currentStatus() {
+        Index index = Index.load();
+        Refs refs = Refs.load();
+        TreeMap<String, String> staged = index.files();
+        List<String> cwdFiles = workingFiles();
+        Commit head = objects().readCommit(refs.head());
+        TreeMap<String, String> trackedFiles = head.getFiles();
+
+        List<String> added = new ArrayList<>();
+        List<String> modified = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Map.Entry<String, String> entry : staged.entrySet()) {
+            if (!entry.getValue().equals(trackedFiles.get(entry.getKey()))) {
+                added.add(entry.getKey());
+            }
+            String working = index.workingBlob(entry.getKey());
+            if (working == null) {
+                deleted.add(entry.getKey());
+            } else if (!working.equals(entry.getValue())) {
+                modified.add(entry.getKey());
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String file: trackedFiles.keySet()) {
+            if (!staged.containsKey(file)) {
+                removed.add(file);
+            }
+        }
+        List<String> untracked = new ArrayList<>();
         for (String file:cwdFiles) {
-            if ((!staged.contains(file) && !trackedFiles.containsKey(file))) {
-                System.out.println(file);
+            if (!index.contains(file)) {
+                untracked.add(file);
             }
         }
-        System.out.println();
+        index.saveRefreshed();
+        return new Gitlet.Status(refs.branches(), refs.currentBranch(), added, removed,
+                modified, deleted, untracked);
     }
 
     public static void checkout(String branchName) {
-        String cur = readContentsAsString(CUR_BRANCH);
-        if (branchName.equals(cur)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+        System.err.println(checkoutBranch(branchName));
+    }
+
+    /** Check out branch BRANCHNAME and return the changes made to the
+     *  working directory. */
+    static Gitlet.Update checkoutBranch(String branchName) {
+        Refs refs = Refs.load();
+        if (branchName.equals(refs.currentBranch())) {
+            throw error("No need to checkout the current branch.");
         }
-        if (!plainFilenamesIn(BRANCHES).contains(branchName)) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        String commitID = refs.branch(branchName);
+        if (commitID == null) {
+            throw error("No such branch exists.");
         }
-        String commitID = readContentsAsString(join(BRANCHES, branchName));
-        Commit commit = readObject(join(COMMITS, commitID), Commit.class);
+        Commit commit = objects().readCommit(commitID);
         TreeMap<String, String> commitFiles = commit.getFiles();
-        File headLoc = join(COMMITS, readContentsAsString(HEAD));
-        Commit head = readObject(headLoc, Commit.class);
+        Commit head = objects().readCommit(refs.head());
         TreeMap<String, String> headFiles = head.getFiles();
-        List<String> filesCWD = plainFilenamesIn(CWD);
-        for (String file: filesCWD) {
-            if (!headFiles.containsKey(file) && commitFiles.containsKey(file)) {
-                System.out.print("There is an untracked file in the way; delete it, ");
-                System.out.println("or add and commit it first.");
-                System.exit(0);
+        checkUntracked(headFiles, commitFiles);
+        Gitlet.Update update = new WorkingTree().update(headFiles, commitFiles);
+        refs.setCurrentBranch(branchName);
+        refs.setHead(commitID);
+        refs.save();
+        return update;
+    }
+
+    public static void checkOut(String fileName) {
+        checkout(Refs.load().head(), fileName);
+    }
+
+    public static void checkout(String commitID, String fileName) {
+        commitID = resolveCommit(commitID, "No commit with that id exists.");
+        Commit commit = objects().readCommit(commitID);
+        String fileBlob = commit.getFiles().get(fileName);
+        if (fileBlob == null) {
+            throw error("File does not exist in that commit.");
+        }
+        objects().copyBlob(fileBlob, join(CWD, fileName));
+        Index index = Index.load();
+        if (fileBlob.equals(index.blob(fileName))) {
+            index.putWritten(fileName, fileBlob);
+            index.save();
+        }
+    }
+
+    /** Print the differences between the staged files and their working
+     *  files, or, given one commit, between its files and the working
+     *  files, or, given two, between their files, as unified diffs. A
+     *  commit is named by a branch or by its ID or a prefix of it. */
+    public static void diff(String... commits) {
+        diff(System.out, commits);
+    }
+
+    /** Write the differences that diff(COMMITS) prints to OUT. */
+    static void diff(OutputStream out, String... commits) {
+        Index index = Index.load();
+        TreeMap<String, String> from = commits.length == 0 ? index.files() : filesOf(commits[0]);
+        TreeMap<String, String> to = new TreeMap<>();
+        if (commits.length == 2) {
+            to = filesOf(commits[1]);
+        } else {
+            for (String path : index.files().keySet()) {
+                String working = index.workingBlob(path);
+                if (working != null) {
+                    to.put(path, working);
+                }
             }
         }
-        for (String entry : headFiles.keySet()) {
-            join(CWD, entry).delete();
+        TreeSet<String> paths = new TreeSet<>(from.keySet());
+        paths.addAll(to.keySet());
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                    StandardCharsets.ISO_8859_1), Pack.BUFFER_SIZE);
+            for (String path : paths) {
+                String a = from.get(path);
+                String b = to.get(path);
+                if (Objects.equals(a, b)) {
+                    continue;
+                }
+                writer.write("diff --gitlet a/" + path + " b/" + path + "\n");
+                List<String> aLines = a == null ? List.of() : blobLines(a);
+                List<String> bLines = b == null ? List.of()
+                        : commits.length == 2 ? blobLines(b) : fileLines(join(CWD, path));
+                if (aLines == null || bLines == null) {
+                    writer.write("Binary files differ\n");
+                    continue;
+                }
+                Diff.unified(a == null ? "/dev/null" : "a/" + path, aLines,
+                        b == null ? "/dev/null" : "b/" + path, bLines, writer);
+            }
+            writer.flush();
+        } catch (IOException excp) {
+            throw error("Cannot write diff.");
         }
-        for (Map.Entry<String, String> entry: commitFiles.entrySet()) {
-            File fileDest = join(CWD, entry.getKey());
-            File fileLoc = join(BLOBS, entry.getValue());
-            writeContents(fileDest, readContentsAsString(fileLoc));
+        index.saveRefreshed();
+    }
+
+    /** Return the files of the commit named NAME, a branch or a commit ID
+     *  or prefix of one. */
+    private static TreeMap<String, String> filesOf(String name) {
+        return objects().readCommit(commitNamed(name)).getFiles();
+    }
+
+    /** Return the ID of the commit named NAME, a branch or a commit ID or
+     *  prefix of one. */
+    static String commitNamed(String name) {
+        String id = Refs.load().branch(name);
+        if (id == null) {
+            id = resolveCommit(name, "No commit with that id exists.");
         }
-        checkoutBranchHelper(branchName, CUR_BRANCH);
-        writeContents(HEAD, commitID);
+        return id;
     }
 
-    public static void checkOut(String fileName) {
-        checkout(readContentsAsString(HEAD), fileName);
+    /** Return the paths of the files in the working directory and every
+     *  directory under it but the .gitlet directory, slash-separated and
+     *  in order. */
+    private static List<String> workingFiles() {
+        List<String> files = new ArrayList<>();
+        try (Profile.Timer timer = Profile.time(Profile.Phase.LIST)) {
+            listFiles(CWD, "", files);
+        }
+        Collections.sort(files);
+        return files;
     }
 
-    public static void checkout(String commitID, String fileName) {
-        boolean a = false;
-        for (String s : plainFilenamesIn(COMMITS)) {
-            if (s.startsWith(commitID)) {
-                commitID = s;
-                a = true;
-                break;
+    /** Fail if a file that TO has and FROM lacks, both maps from path to
+     *  blob, already exists in the working directory, at any depth: it is
+     *  untracked, and replacing the files of FROM by those of TO would
+     *  overwrite it. Only the paths TO adds are looked at, so the working
+     *  directory need not be walked. */
+    private static void checkUntracked(Map<String, String> from, Map<String, String> to) {
+        for (String path : to.keySet()) {
+            if (!from.containsKey(path) && join(CWD, path).exists()) {
+                throw error("There is an untracked file in the way; delete it, "
+                        + "or add and commit it first.");
             }
         }
-        if (!a) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        File commitLoc = join(COMMITS, commitID);
-        Commit commit = readObject(commitLoc, Commit.class);
-        String fileBlob = commit.getFiles().get(fileName);
-        if (fileBlob == null) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+    }
+
+    /** Return the lines of FILE, or null if it is binary. */
+    private static List<String> fileLines(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return Diff.lines(in);
+        } catch (IOException excp) {
+            throw error("Cannot read %s.", file.getName());
         }
-        String fileContents = readContentsAsString(join(BLOBS, fileBlob));
-        writeContents(join(CWD, fileName), fileContents);
+    }
+
+    public static void migrate() {
+        initializedCheck();
+        Migration.run();
+    }
+
+    public static void repack() {
+        objects().repack();
+    }
+
+    /** Delete the objects that cannot be reached from the branches, the
+     *  head or the index and were written more than GRACE seconds ago. */
+    public static void gc(long grace) {
+        int deleted = GarbageCollector.collect(grace);
+        System.out.println("Removed " + deleted + " unreachable objects.");
     }
 
     public static void branch(String branchName) {
-        if (plainFilenamesIn(BRANCHES).contains(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        Refs refs = Refs.load();
+        if (refs.branch(branchName) != null) {
+            throw error("A branch with that name already exists.");
         }
-        String pointer = readContentsAsString(HEAD);
-        writeContents(join(BRANCHES, branchName), pointer);
+        refs.setBranch(branchName, refs.head());
+        refs.save();
     }
 
     public static void rmBranch(String branchName) {
-        if (!plainFilenamesIn(BRANCHES).contains(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        Refs refs = Refs.load();
+        if (refs.branch(branchName) == null) {
+            throw error("A branch with that name does not exist.");
         }
-        if (readContentsAsString(CUR_BRANCH).equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+        if (refs.currentBranch().equals(branchName)) {
+            throw error("Cannot remove the current branch.");
         }
-        join(BRANCHES, branchName).delete();
+        refs.removeBranch(branchName);
+        refs.save();
     }
 
-    public static void reset(String commitID) {
-        if (!plainFilenamesIn(COMMITS).contains(commitID)) {
-            System.out.println("No commit with that ID exists.");
-            System.exit(0);
+    public static void addRemote(String name, String path) {
+        Remote.add(name, path);
+    }
+
+    public static void rmRemote(String name) {
+        Remote.remove(name);
+    }
+
+    /** Bring branch BRANCH of remote REMOTE and the history it lacks into
+     *  this repository, as branch REMOTE/BRANCH. */
+    public static void fetch(String remote, String branch) {
+        Remote other = new Remote(Remote.directory(remote));
+        String tip = other.branch(branch);
+        if (tip == null) {
+            throw error("That remote does not have that branch.");
         }
-        List<String> cwdFiles = plainFilenamesIn(CWD);
-        Commit head = readObject(join(COMMITS, readContentsAsString(HEAD)), Commit.class);
-        Commit des = readObject(join(COMMITS, commitID), Commit.class);
-        TreeMap<String, String> headFiles = head.getFiles();
-        TreeMap<String, String> desFiles = des.getFiles();
-        for (String file : cwdFiles) {
-            if (!headFiles.containsKey(file) && desFiles.containsKey(file)) {
-                System.out.print("There is an untracked file in the way; ");
-                System.out.println("delete it, or add and commit it first.");
-                System.exit(0);
-            }
+        other.transfer(tip, !remote.equals(Promisor.remote(GITLET_DIR)));
+        Refs refs = Refs.load();
+        refs.setBranch(remote + "/" + branch, tip);
+        refs.save();
+    }
+
+    /** Make the current directory a partial clone of the repository whose
+     *  gitlet directory is at PATH, which becomes its remote origin: copy
+     *  the commits and trees of all its branches, as the branches
+     *  origin/BRANCH, and check out its current branch, fetching only the
+     *  blobs that needs. Other blobs are fetched from origin as they are
+     *  first read. */
+    public static void cloneFrom(String path) {
+        if (GITLET_DIR.exists()) {
+            throw error("A Gitlet version-control system already "
+                    + "exists in the current directory.");
+        }
+        File dir = new File(path.replace("/", File.separator));
+        if (!join(dir.isAbsolute() ? dir : join(CWD, dir.getPath()), FORMAT.getName()).isFile()) {
+            throw error("Remote directory not found.");
+        }
+        initMethod();
+        addRemote("origin", path);
+        writeContents(PROMISOR, "origin");
+        reload();
+        Remote origin = new Remote(Remote.directory("origin"));
+        Refs refs = Refs.load();
+        for (String branch : origin.branches()) {
+            String tip = origin.branch(branch);
+            origin.transfer(tip, false);
+            refs.setBranch("origin/" + branch, tip);
         }
-        for (Map.Entry<String, String> entry : desFiles.entrySet()) {
-            String contents = readContentsAsString(join(BLOBS, entry.getValue()));
-            writeContents(join(CWD, entry.getKey()), contents);
+        String current = origin.currentBranch();
+        if (!current.equals(refs.currentBranch())) {
+            refs.setBranch(current, refs.head());
+            refs.setCurrentBranch(current);
+            refs.removeBranch("master");
         }
-        for (String entry : headFiles.keySet()) {
-            join(CWD, entry).delete();
+        refs.save();
+        System.err.println(resetTo(origin.branch(current)));
+    }
+
+    /** Fetch branch BRANCH of remote REMOTE and merge it into the current
+     *  branch. */
+    public static void pull(String remote, String branch) {
+        fetch(remote, branch);
+        merge(remote + "/" + branch);
+    }
+
+    /** Send the head commit and the history remote REMOTE lacks to it, and
+     *  make it the tip of its branch BRANCH. The tip of BRANCH must be an
+     *  ancestor of the head commit, and BRANCH must not be the remote's
+     *  current branch: its index and working files would be left holding
+     *  the old tip, and its next commit would undo what was pushed. */
+    public static void push(String remote, String branch) {
+        if (batching()) {
+            throw error("Cannot use another repository during a batch.");
+        }
+        File dir = Remote.directory(remote);
+        Remote local = new Remote(GITLET_DIR);
+        String head = Refs.load().head();
+        File home = CWD;
+        setDirectory(dir.getAbsoluteFile().getParentFile());
+        try (Lock lock = Lock.acquire(REFS_LOCK)) {
+            Refs refs = Refs.load();
+            if (branch.equals(refs.currentBranch())) {
+                throw error("Cannot push to the current branch of the remote.");
+            }
+            String tip = refs.branch(branch);
+            if (tip != null && !local.isAncestor(tip, head)) {
+                throw error("Please pull down remote changes before pushing.");
+            }
+            local.transfer(head, true);
+            refs.setBranch(branch, head);
+            refs.save();
+        } finally {
+            setDirectory(home);
         }
-        checkoutBranchHelper(commitID, HEAD);
-        writeContents(join(BRANCHES, readContentsAsString(CUR_BRANCH)), commitID);
+    }
+
+    public static void reset(String commitID) {
+        System.err.println(resetTo(commitID));
+    }
+
+    /** Reset the current branch to the commit whose ID starts with
+     *  COMMITID and return the changes made to the working directory. */
+    static Gitlet.Update resetTo(String commitID) {
+        commitID = resolveCommit(commitID, "No commit with that ID exists.");
+        Refs refs = Refs.load();
+        Commit head = objects().readCommit(refs.head());
+        Commit des = objects().readCommit(commitID);
+        TreeMap<String, String> headFiles = head.getFiles();
+        TreeMap<String, String> desFiles = des.getFiles();
+        checkUntracked(headFiles, desFiles);
+        Gitlet.Update update = new WorkingTree().update(headFiles, desFiles);
+        refs.advance(commitID);
+        refs.save();
+        return update;
     }
 
     public static void merge(String branchName) {
+        Gitlet.MergeResult result = mergeBranch(branchName);
+        if (result.fastForwarded()) {
+            System.err.println(result.update());
+            System.out.println("Current branch fast-forwarded.");
+        } else if (result.conflict()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Merge branch BRANCHNAME into the current branch and return the
+     *  outcome. */
+    static Gitlet.MergeResult mergeBranch(String branchName) {
         mergeFailCases(branchName);
-        String commitIdBranch = readContentsAsString(join(BRANCHES, branchName));
-        String commitIDHead = readContentsAsString(HEAD);
+        Refs refs = Refs.load();
+        String commitIdBranch = refs.branch(branchName);
+        String commitIDHead = refs.head();
+        if (isAncestor(commitIdBranch, commitIDHead)) {
+            throw error("Given branch is an ancestor of the current branch.");
+        }
+        if (isAncestor(commitIDHead, commitIdBranch)) {
+            return new Gitlet.MergeResult(commitIdBranch, false, resetTo(commitIdBranch));
+        }
         String commitIDSplit = splitPoint(commitIdBranch, commitIDHead);
-        Commit given = readObject(join(COMMITS, commitIdBranch), Commit.class);
-        Commit head = readObject(join(COMMITS, commitIDHead), Commit.class);
-        Commit split = readObject(join(COMMITS, commitIDSplit), Commit.class);
+        Commit given = objects().readCommit(commitIdBranch);
+        Commit head = objects().readCommit(commitIDHead);
+        Commit split = objects().readCommit(commitIDSplit);
         TreeMap<String, String> givenFiles = given.getFiles();
         TreeMap<String, String> headFiles = head.getFiles();
         TreeMap<String, String> splitFiles = split.getFiles();
+        List<String> blobs = new ArrayList<>();
+        TreeSet<String> paths = new TreeSet<>(splitFiles.keySet());
+        paths.addAll(givenFiles.keySet());
+        for (String path : paths) {
+            if (!Objects.equals(givenFiles.get(path), headFiles.get(path))) {
+                blobs.add(givenFiles.get(path));
+                blobs.add(headFiles.get(path));
+                blobs.add(splitFiles.get(path));
+            }
+        }
+        blobs.removeIf(Objects::isNull);
+        objects().prefetch(blobs);
+        Index index = Index.load();
         boolean conflict = false;
         for (Map.Entry<String, String> entry : splitFiles.entrySet()) {
             String key = entry.getKey();
@@ -317,18 +873,14 @@ public class Repository {
                     && !givenFiles.get(key).equals(val)
                     && headFiles.containsKey(key)
                     && headFiles.get(key).equals(val)) {
-                String contents = readContentsAsString(join(BLOBS, givenFiles.get(key)));
-                writeContents(join(CWD, key), contents);
-                writeContents(join(STAGING_ADD, key), contents);
+                objects().copyBlob(givenFiles.get(key), join(CWD, key));
+                index.putWritten(key, givenFiles.get(key));
                 continue;
             }
             if (!givenFiles.containsKey(key)
                     && headFiles.containsKey(key)
                     && headFiles.get(key).equals(val)) {
-                writeContents(join(STAGING_REMOVE, key), readContentsAsString(join(CWD, key)));
-                if (join(STAGING_ADD, key).exists()) {
-                    join(STAGING_ADD, key).delete();
-                }
+                index.remove(key);
                 if (join(CWD, key).exists()) {
                     join(CWD, key).delete();
                 }
@@ -339,28 +891,19 @@ public class Repository {
                     && !givenFiles.get(key).equals(val)
                     && !headFiles.get(key).equals(val)
                     && !headFiles.get(key).equals(givenFiles.get(key))) {
-                conflict = true;
-                String newCon = mergeConflict(headFiles.get(key), givenFiles.get(key));
-                writeContents(join(CWD, key), newCon);
-                writeContents(join(STAGING_ADD, key), newCon);
+                conflict |= mergeFile(index, key, val, headFiles.get(key), givenFiles.get(key));
                 continue;
             }
             if (!givenFiles.containsKey(key)
                     && headFiles.containsKey(key)
                     && !headFiles.get(key).equals(val)) {
-                conflict = true;
-                String newCon = mergeConflict(headFiles.get(key), null);
-                writeContents(join(CWD, key), newCon);
-                writeContents(join(STAGING_ADD, key), newCon);
+                conflict |= mergeFile(index, key, val, headFiles.get(key), null);
                 continue;
             }
             if (!headFiles.containsKey(key)
                     && givenFiles.containsKey(key)
                     && !givenFiles.get(key).equals(val)) {
-                String newCon = mergeConflict(null, givenFiles.get(key));
-                conflict = true;
-                writeContents(join(CWD, key), newCon);
-                writeContents(join(STAGING_ADD, key), newCon);
+                conflict |= mergeFile(index, key, val, null, givenFiles.get(key));
                 continue;
             }
         }
@@ -368,156 +911,165 @@ public class Repository {
             String key = entry.getKey();
             String val = entry.getValue();
             if (!headFiles.containsKey(key) && !splitFiles.containsKey(key)) {
-                String contents = readContentsAsString(join(BLOBS, val));
-                writeContents(join(CWD, key), contents);
-                writeContents(join(STAGING_ADD, key), contents);
+                objects().copyBlob(val, join(CWD, key));
+                index.putWritten(key, val);
             }
         }
+        index.save();
         Commit merged = new Commit("Merged " + branchName
-                + " into " + readContentsAsString(CUR_BRANCH) + ".",
-                new Date(), commitIDHead);
-        merged.set2ndparent(commitIdBranch);
-        if (conflict) {
-            System.out.println("Encountered a merge conflict.");
-        }
-        writeContents(HEAD, merged.id());
-        writeContents(join(BRANCHES, readContentsAsString(CUR_BRANCH)), merged.id());
+                + " into " + refs.currentBranch() + ".",
+                new Date(), commitIDHead, commitIdBranch);
+        return new Gitlet.MergeResult(merged.id(), conflict, null);
     }
 
-    private static String mergeConflict(String a, String b) {
-        String s = "<<<<<<< HEAD\n";
-        String c = "";
-        if (a != null) {
-            c = readContentsAsString(join(BLOBS, a));
+    /** Write the merge of the versions BASE, OURS and THEIRS of FILE, given
+     *  as blobs, to its working file and stage it. OURS or THEIRS is null
+     *  if that side deleted the file. Return true if the sides conflict.
+     *  A text changed on both sides is merged line by line, so that only
+     *  overlapping changes conflict; a binary file, or one deleted on one
+     *  side, conflicts as a whole. */
+    private static boolean mergeFile(Index index, String file, String base,
+                                     String ours, String theirs) {
+        List<String> baseLines = blobLines(base);
+        List<String> oursLines = ours == null ? null : blobLines(ours);
+        List<String> theirsLines = theirs == null ? null : blobLines(theirs);
+        File dest = join(CWD, file);
+        boolean conflict = true;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(dest), StandardCharsets.ISO_8859_1), Pack.BUFFER_SIZE)) {
+            if (baseLines != null && oursLines != null && theirsLines != null) {
+                conflict = Diff.merge(baseLines, oursLines, theirsLines, out);
+            } else {
+                try (InputStream oursIn = ours == null ? null : objects().openBlob(ours);
+                     InputStream theirsIn = theirs == null ? null : objects().openBlob(theirs)) {
+                    Diff.conflict(oursIn, theirsIn, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Cannot write %s.", file);
         }
-        s += c;
-        s += "=======\n";
-        c = "";
-        if (b != null) {
-            c = readContentsAsString(join(BLOBS, b));
+        index.putWritten(file, objects().writeBlob(dest));
+        return conflict;
+    }
+
+    /** Return the lines of blob ID, or null if it is binary. */
+    private static List<String> blobLines(String id) {
+        try (InputStream in = objects().openBlob(id)) {
+            return Diff.lines(in);
+        } catch (IOException excp) {
+            throw error("Cannot read blob %s.", id);
         }
-        s += c;
-        s += ">>>>>>>\n";
-        return s;
     }
 
     private static void mergeFailCases(String branchName) {
-        if (!plainFilenamesIn(BRANCHES).contains(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
-        }
-        TreeMap<String, String> headFiles = readObject(HEAD, Commit.class).getFiles();
-        String commitID = readContentsAsString(join(BRANCHES, branchName));
-        TreeMap<String, String> commitFiles = readObject(join(COMMITS, commitID),
-                Commit.class).getFiles();
-        if (!plainFilenamesIn(STAGING_ADD).isEmpty()
-                || !plainFilenamesIn(STAGING_REMOVE).isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
-        }
-        if (branchName.equals(readContentsAsString(CUR_BRANCH))) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
-        }
-        String commitIdBranch = readContentsAsString(join(BRANCHES, branchName));
-        String commitIDHead = readContentsAsString(HEAD);
-        String commitIDSplit = splitPoint(commitIdBranch, commitIDHead);
-        if (commitIDSplit.equals(commitIdBranch)) {
-            System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+        Refs refs = Refs.load();
+        if (refs.branch(branchName) == null) {
+            throw error("A branch with that name does not exist.");
         }
-        if (commitIDSplit.equals(commitIDHead)) {
-            checkout(branchName);
-            System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+        Commit head = objects().readCommit(refs.head());
+        if (!Index.load().files().equals(head.getFiles())) {
+            throw error("You have uncommitted changes.");
+        }
+        if (branchName.equals(refs.currentBranch())) {
+            throw error("Cannot merge a branch with itself.");
         }
     }
 
-    private static String splitPoint(String commit1, String commit2) {
-        TreeMap<String, Integer> bfs1 = bfs(commit1);
-        TreeMap<String, Integer> bfs2 = bfs(commit2);
-        String splitPoint = null;
-        int splitRef = 0;
-        for (Map.Entry<String, Integer> entry : bfs1.entrySet()) {
-            String key = entry.getKey();
-            int val = entry.getValue();
-            if (bfs2.containsKey(key)
-                    && (splitPoint == null || val + bfs2.get(key) < splitRef)) {
-                splitPoint = key;
-                splitRef = val + bfs2.get(key);
-            }
-        }
-        return splitPoint;
-    }
-
-    private static TreeMap<String, Integer> bfs(String commit) {
-        Queue<String> fringe = new LinkedList<>();
-        TreeMap<String, Integer> marked = new TreeMap<>();
-        marked.put(commit, 0);
-        fringe.add(commit);
-        int disTo = 1;
-        while (!fringe.isEmpty()) {
-            String v = fringe.remove();
-            Commit c = readObject(join(COMMITS, v), Commit.class);
-            String firstParent = c.getParentID();
-            String secondParent = c.get2ndparent();
-            if (firstParent != null && !marked.containsKey(firstParent)) {
-                fringe.add(firstParent);
-                marked.put(firstParent, disTo);
-            }
-            if (secondParent != null && !marked.containsKey(secondParent)) {
-                fringe.add(secondParent);
-                marked.put(secondParent, disTo);
-            }
-            disTo++;
-        }
-        return marked;
+    /** Return true if commit ANCESTOR is commit COMMIT or one of its
+     *  ancestors. */
+    static boolean isAncestor(String ancestor, String commit) {
+        addCommits();
+        CommitGraph graph = CommitGraph.load();
+        return Reachability.load().isAncestor(graph.position(ancestor),
+                graph.position(commit));
     }
 
-    private static void checkoutBranchHelper(String commitID, File head2) {
-        List<String> staged = plainFilenamesIn(STAGING_ADD);
-        for (String s : staged) {
-            join(STAGING_ADD, s).delete();
-        }
-        staged = plainFilenamesIn(STAGING_REMOVE);
-        for (String s : staged) {
-            join(STAGING_REMOVE, s).delete();
-        }
-        writeContents(head2, commitID);
+    /** Return the numbers of commits that the commit named A has and the
+     *  commit named B lacks, and that B has and A lacks. Each is named by
+     *  a branch or by its ID or a prefix of it. */
+    static int[] countAheadBehind(String a, String b) {
+        String idA = commitNamed(a);
+        String idB = commitNamed(b);
+        addCommits();
+        CommitGraph graph = CommitGraph.load();
+        return Reachability.load().aheadBehind(graph.position(idA), graph.position(idB));
+    }
+
+    /** Print how many commits the commit named A has that the commit
+     *  named B lacks, and how many it lacks that B has. */
+    public static void aheadBehind(String a, String b) {
+        int[] counts = countAheadBehind(a, b);
+        System.out.println(counts[0] + " ahead, " + counts[1] + " behind");
+    }
+
+    /** Return the merge base of COMMIT1 and COMMIT2. After a criss-cross
+     *  merge, when they have several, the one of highest generation is
+     *  used. */
+    static String splitPoint(String commit1, String commit2) {
+        CommitGraph graph = CommitGraph.load();
+        List<Integer> bases = graph.mergeBases(graph.position(commit1),
+                graph.position(commit2));
+        return graph.id(bases.get(0));
     }
 
     private static String statusPrint(String header) {
         return "=== " + header + " ===";
     }
 
-    private static void printLog(Commit c) {
-        System.out.println("===");
-        System.out.println("commit " + c.id());
-        if (c.get2ndparent() != null) {
-            System.out.print("Merge: ");
-            System.out.print(c.getParentID().substring(0, 7) + " ");
-            System.out.println(c.get2ndparent().substring(0, 7));
+    private static void printLog(PrintWriter out, Commit c) {
+        printLog(out, c.id(), c.getParentID(), c.get2ndparent(), c.getDate(), c.getMessage());
+    }
+
+    private static void printLog(PrintWriter out, String id, String parent, String parent2,
+                                 String date, String message) {
+        out.println("===");
+        out.println("commit " + id);
+        if (parent2 != null) {
+            out.print("Merge: ");
+            out.print(parent.substring(0, 7) + " ");
+            out.println(parent2.substring(0, 7));
         }
-        System.out.println("Date: " + c.getDate());
-        System.out.println(c.getMessage());
-        System.out.println();
+        out.println("Date: " + date);
+        out.println(message);
+        out.println();
+    }
+
+    /** Return the full ID of the commit whose ID starts with PREFIX. If
+     *  there is none, fail with the message NOTFOUND; if there are several,
+     *  fail with a message listing them. */
+    private static String resolveCommit(String prefix, String notFound) {
+        addCommits();
+        List<String> ids = CommitIndex.resolve(prefix);
+        if (ids.isEmpty()) {
+            throw error("%s", notFound);
+        }
+        if (ids.size() > 1) {
+            StringBuilder message = new StringBuilder("Commit id " + prefix
+                    + " is ambiguous; it could be:");
+            for (String id : ids) {
+                message.append("\n  ").append(id);
+            }
+            throw error("%s", message);
+        }
+        return ids.get(0);
     }
 
     public static void operandCheck(int len, int correct) {
         if (len != correct) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw error("Incorrect operands.");
         }
     }
 
     public static void gitletDirCheck() {
-        if (!GITLET_DIR.isDirectory()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+        initializedCheck();
+        if (Migration.format() != Migration.CURRENT) {
+            throw error("Repository format is out of date; run migrate first.");
         }
     }
 
-    public static String blobHash(String file, File directory) {
-        return sha1(file, readContentsAsString(join(directory, file)));
+    private static void initializedCheck() {
+        if (!GITLET_DIR.isDirectory()) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
     }
 }
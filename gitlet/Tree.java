@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import static gitlet.Utils.*;
+
+/** Represents one directory of a commit's files: the blobs of the files
+ *  directly in it and the trees of its subdirectories, by name. A tree is
+ *  identified by the hash of its contents, so every commit that leaves a
+ *  directory unchanged shares that directory's tree, and committing a
+ *  change writes only the trees on the path to the changed files. The
+ *  index caches the IDs of the trees of the staged files, so that only
+ *  those trees are built and hashed, too.
+ *
+ *  A tree is stored as its entries sorted by name, each a type byte, the
+ *  name in UTF-8, a zero byte and the 20-byte ID of the blob or tree.
+ *  @author Saksham Agarwal
+ */
+class Tree {
+
+    /** Entry types. */
+    static final byte BLOB = 'b';
+    static final byte TREE = 't';
+
+    /** The types of the entries of this tree, by name. */
+    private final TreeMap<String, Byte> types = new TreeMap<>();
+    /** The IDs of the entries of this tree, by name. */
+    private final TreeMap<String, String> ids = new TreeMap<>();
+
+    /** An empty tree. */
+    Tree() {
+    }
+
+    /** The tree stored as CONTENTS. */
+    Tree(byte[] contents) {
+        int pos = 0;
+        while (pos < contents.length) {
+            byte type = contents[pos];
+            int end = pos + 1;
+            while (contents[end] != 0) {
+                end++;
+            }
+            String name = new String(contents, pos + 1, end - pos - 1, StandardCharsets.UTF_8);
+            byte[] id = new byte[20];
+            System.arraycopy(contents, end + 1, id, 0, 20);
+            types.put(name, type);
+            ids.put(name, Pack.toHex(id));
+            pos = end + 21;
+        }
+    }
+
+    /** Return the stored form of this tree. */
+    byte[] serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String> entry : ids.entrySet()) {
+            out.write(types.get(entry.getKey()));
+            out.writeBytes(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            out.write(0);
+            out.writeBytes(Pack.toBytes(entry.getValue()));
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the ID of the tree stored as CONTENTS. */
+    static String id(byte[] contents) {
+        return sha1("tree\0", contents);
+    }
+
+    /** Store the trees of FILES, a map from slash-separated path to blob
+     *  ID, and return the ID of the root tree. Trees that are already
+     *  stored are not written again. */
+    static String write(SortedMap<String, String> files) {
+        return write(files, "", new HashMap<>());
+    }
+
+    /** Store the trees of FILES, the files under directory DIR ("" for the
+     *  root) by their slash-separated paths, and return the ID of the tree
+     *  of DIR. CACHE holds the IDs of trees known to be stored, by the path
+     *  of their directory: a directory found in it is neither built nor
+     *  stored again, and the trees built are added to it. */
+    static String write(SortedMap<String, String> files, String dir,
+                        Map<String, String> cache) {
+        String cached = cache.get(dir);
+        if (cached != null) {
+            return cached;
+        }
+        int start = dir.isEmpty() ? 0 : dir.length() + 1;
+        Tree tree = new Tree();
+        while (!files.isEmpty()) {
+            String path = files.firstKey();
+            int slash = path.indexOf('/', start);
+            if (slash < 0) {
+                tree.types.put(path.substring(start), BLOB);
+                tree.ids.put(path.substring(start), files.get(path));
+                files = files.tailMap(path + "\0");
+                continue;
+            }
+            String sub = path.substring(0, slash);
+            SortedMap<String, String> inSub = files.subMap(sub + "/", sub + "0");
+            tree.types.put(sub.substring(start), TREE);
+            tree.ids.put(sub.substring(start), write(inSub, sub, cache));
+            files = files.tailMap(sub + "0");
+        }
+        byte[] contents = tree.serialize();
+        String id = id(contents);
+        Repository.objects().writeTree(id, contents);
+        cache.put(dir, id);
+        return id;
+    }
+
+    /** Return the files under tree ID as a map from slash-separated path
+     *  to blob ID. */
+    static TreeMap<String, String> flatten(String id) {
+        TreeMap<String, String> files = new TreeMap<>();
+        flatten(id, "", files);
+        return files;
+    }
+
+    private static void flatten(String id, String prefix, TreeMap<String, String> files) {
+        Tree tree = Repository.objects().readTree(id);
+        for (Map.Entry<String, String> entry : tree.ids.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (tree.types.get(entry.getKey()) == TREE) {
+                flatten(entry.getValue(), path + "/", files);
+            } else {
+                files.put(path, entry.getValue());
+            }
+        }
+    }
+
+    /** Return the IDs of the entries of this tree, by name. */
+    Map<String, String> entries() {
+        return ids;
+    }
+
+    /** Return true if the entry NAME of this tree is a subtree. */
+    boolean isTree(String name) {
+        return types.get(name) == TREE;
+    }
+}
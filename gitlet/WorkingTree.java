@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static gitlet.Utils.*;
+
+/** Moves the working directory and the index from the files of one commit
+ *  to those of another, as checkout and reset do. Only paths that differ
+ *  are touched: a file whose working copy already holds the target blob,
+ *  as the index's stat cache shows without reading it, is left alone.
+ *  The blobs to be written are fetched together first, in a partial
+ *  clone, then written by a small pool of threads.
+ *  @author Saksham Agarwal
+ */
+class WorkingTree {
+
+    /** Largest number of files written at once. */
+    private static final int WRITERS =
+            Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /** Number of files written, deleted and left as they were. */
+    private int written;
+    private int deleted;
+    private int skipped;
+
+    /** Replace the files FROM, a map from path to blob of the commit the
+     *  working directory holds, by the files TO, and make TO the index.
+     *  Return the numbers of files changed. */
+    Gitlet.Update update(Map<String, String> from, Map<String, String> to) {
+        Index index = Index.load();
+        for (String path : from.keySet()) {
+            if (!to.containsKey(path)) {
+                if (join(Repository.CWD, path).delete()) {
+                    deleted++;
+                }
+                index.remove(path);
+            }
+        }
+        for (String path : index.files().keySet()) {
+            if (!to.containsKey(path)) {
+                index.remove(path);
+            }
+        }
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : to.entrySet()) {
+            String path = entry.getKey();
+            if (entry.getValue().equals(index.blob(path))
+                    && entry.getValue().equals(index.workingBlob(path))) {
+                skipped++;
+            } else {
+                changed.add(path);
+            }
+        }
+        write(changed, to);
+        for (String path : changed) {
+            index.putWritten(path, to.get(path));
+        }
+        written = changed.size();
+        index.save();
+        return new Gitlet.Update(written, deleted, skipped);
+    }
+
+    /** Write the blob FILES gives for each of PATHS to its working file. */
+    private void write(List<String> paths, Map<String, String> files) {
+        if (paths.isEmpty()) {
+            return;
+        }
+        ObjectDatabase objects = Repository.objects();
+        List<String> blobs = new ArrayList<>();
+        for (String path : paths) {
+            blobs.add(files.get(path));
+        }
+        objects.prefetch(blobs);
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(WRITERS, paths.size()));
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (String path : paths) {
+                writes.add(pool.submit(() -> {
+                    File file = join(Repository.CWD, path);
+                    file.getParentFile().mkdirs();
+                    objects.copyBlob(files.get(path), file);
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof GitletException) {
+                throw (GitletException) excp.getCause();
+            }
+            throw error("Cannot update working directory.");
+        } catch (InterruptedException excp) {
+            throw error("Cannot update working directory.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}